@@ -0,0 +1,233 @@
+package com.mylike.originandroid;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.Handler;
+import android.os.Message;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * A {@link Handler} that can coalesce redundant messages. A message sent
+ * with {@link #sendCoalescibleMessage} is identified by its handler, its
+ * {@code what} and a key; while such a message is still pending, sending
+ * another one with the same identity merges its payload into the pending
+ * message instead of enqueuing a second one. The pending message keeps its
+ * place in the queue.
+ *
+ * <p>Payloads are merged by a {@link Merger}; by default the newer payload
+ * replaces the older one. If the handler is given a {@link LooperStats},
+ * each merged message is counted in it and each message this handler
+ * dispatches is recorded in it. The stats must not be recorded into by any
+ * other looper thread.
+ *
+ * <p>A coalescible message carries a private token as its {@code obj},
+ * unique to that send, and the payload is kept in the token. So a pending
+ * message can be found and removed exactly, and this class never holds on to
+ * a {@link Message} it has handed to the queue. If the message leaves the
+ * queue some other way, for example through
+ * {@link #removeCallbacksAndMessages} or because the looper quit, the next
+ * send with the same identity sees that and enqueues a new message. The
+ * tokens of such messages are dropped once the number of tracked tokens has
+ * doubled since the last sweep, and all at once when a send finds the looper
+ * quitting; {@link Handler#removeMessages} and
+ * {@link Handler#removeCallbacksAndMessages} are final and cannot do it.
+ *
+ * @hide
+ */
+public class CoalescingHandler extends Handler {
+    /**
+     * Merges the payload of a redundant message into the pending one.
+     */
+    public interface Merger {
+        /**
+         * Returns the payload the pending message should carry from now on.
+         * Called with the handler's coalescing lock held; must not block.
+         */
+        Object merge(int what, @Nullable Object key, @Nullable Object pending,
+                @Nullable Object incoming);
+    }
+
+    private static final Merger REPLACE = new Merger() {
+        @Override
+        public Object merge(int what, Object key, Object pending, Object incoming) {
+            return incoming;
+        }
+    };
+
+    /** Tracked tokens below which stale ones are not swept. */
+    private static final int MIN_SWEEP_THRESHOLD = 16;
+
+    private final @Nullable LooperStats mStats;
+    private final Merger mMerger;
+
+    private final Object mLock = new Object();
+    // guarded by mLock: the token of the pending coalescible message of each identity
+    private final HashMap<Identity, Pending> mPending = new HashMap<Identity, Pending>();
+    // guarded by mLock: mPending is swept of stale tokens when it grows past this
+    private int mSweepThreshold = MIN_SWEEP_THRESHOLD;
+
+    public CoalescingHandler(@NonNull android.os.Looper looper) {
+        this(looper, null, REPLACE);
+    }
+
+    public CoalescingHandler(@NonNull android.os.Looper looper, @Nullable LooperStats stats) {
+        this(looper, stats, REPLACE);
+    }
+
+    public CoalescingHandler(@NonNull android.os.Looper looper, @Nullable LooperStats stats,
+            @NonNull Merger merger) {
+        super(looper);
+        mStats = stats;
+        mMerger = Objects.requireNonNull(merger);
+    }
+
+    /**
+     * Sends a message with the given {@code what} and payload, or merges the
+     * payload into a pending message with the same {@code what} and key.
+     *
+     * @return true if the message was enqueued or merged, false if the
+     * looper is quitting.
+     */
+    public final boolean sendCoalescibleMessage(int what, @Nullable Object key,
+            @Nullable Object obj) {
+        return sendCoalescibleMessageDelayed(what, key, obj, 0);
+    }
+
+    /**
+     * Like {@link #sendCoalescibleMessage}, but a newly enqueued message is
+     * delivered after {@code delayMillis}. A merged message keeps the delivery
+     * time it was enqueued with.
+     */
+    public final boolean sendCoalescibleMessageDelayed(int what, @Nullable Object key,
+            @Nullable Object obj, long delayMillis) {
+        final Identity identity = new Identity(what, key);
+        synchronized (mLock) {
+            final Pending pending = mPending.get(identity);
+            // The message may have been removed from the queue behind our back, or
+            // be about to be dispatched; either way it takes no more payloads.
+            if (pending != null && hasMessages(what, pending)) {
+                pending.payload = mMerger.merge(what, key, pending.payload, obj);
+                if (mStats != null) {
+                    mStats.recordMergedMessage();
+                }
+                return true;
+            }
+            final Pending token = new Pending(identity, obj);
+            if (!sendMessageDelayed(obtainMessage(what, token), delayMillis)) {
+                // The looper is quitting and has dropped every pending message.
+                mPending.clear();
+                mSweepThreshold = MIN_SWEEP_THRESHOLD;
+                return false;
+            }
+            mPending.put(identity, token);
+            if (mPending.size() > mSweepThreshold) {
+                sweepLocked();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Drops the tokens of messages that left the queue without being
+     * dispatched, then lets mPending double before the next sweep.
+     */
+    private void sweepLocked() {
+        final Iterator<Pending> it = mPending.values().iterator();
+        while (it.hasNext()) {
+            final Pending pending = it.next();
+            if (!hasMessages(pending.identity.what, pending)) {
+                it.remove();
+            }
+        }
+        mSweepThreshold = Math.max(MIN_SWEEP_THRESHOLD, mPending.size() * 2);
+    }
+
+    /**
+     * Removes the pending coalescible message with the given {@code what}
+     * and key, if any.
+     */
+    public final void removeCoalescibleMessage(int what, @Nullable Object key) {
+        synchronized (mLock) {
+            final Pending pending = mPending.remove(new Identity(what, key));
+            if (pending != null) {
+                // in case it was already taken off the queue for dispatch
+                pending.canceled = true;
+                removeMessages(what, pending);
+            }
+        }
+    }
+
+    @Override
+    public void dispatchMessage(Message msg) {
+        if (mStats == null) {
+            dispatchCoalescible(msg);
+            return;
+        }
+        final long when = msg.getWhen();
+        final long start = System.nanoTime();
+        final long dispatchStart = when > 0 ? SystemClock.uptimeMillis() : 0;
+        final int what = msg.what;
+        dispatchCoalescible(msg);
+        mStats.recordDispatch(getClass(), what, System.nanoTime() - start,
+                when > 0 ? dispatchStart - when : LooperStats.NO_DELAY);
+    }
+
+    private void dispatchCoalescible(Message msg) {
+        if (msg.obj instanceof Pending) {
+            final Pending token = (Pending) msg.obj;
+            // 从此刻起不再合并进这条消息，之后的同类消息重新入队
+            synchronized (mLock) {
+                if (mPending.get(token.identity) == token) {
+                    mPending.remove(token.identity);
+                }
+                if (token.canceled) {
+                    return;
+                }
+                // The looper owns the message until dispatch returns.
+                msg.obj = token.payload;
+            }
+        }
+        super.dispatchMessage(msg);
+    }
+
+    /** The {@code obj} of a coalescible message: unique per send, holding the payload. */
+    private static final class Pending {
+        final Identity identity;
+        // guarded by mLock
+        Object payload;
+        boolean canceled;
+
+        Pending(Identity identity, Object payload) {
+            this.identity = identity;
+            this.payload = payload;
+        }
+    }
+
+    private static final class Identity {
+        final int what;
+        final Object key;
+
+        Identity(int what, Object key) {
+            this.what = what;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Identity)) {
+                return false;
+            }
+            final Identity other = (Identity) o;
+            return what == other.what && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * what + (key != null ? key.hashCode() : 0);
+        }
+    }
+}
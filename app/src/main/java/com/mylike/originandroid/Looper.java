@@ -74,6 +74,13 @@ public final class Looper {
 
     private static final String TAG = "Looper";
 
+    /**
+     * Field id under which {@link #writeToProto} writes the {@link LooperStats}, as an
+     * extension of LooperProto.
+     */
+    private static final long LOOPER_STATS = ProtoOutputStream.FIELD_TYPE_MESSAGE
+            | ProtoOutputStream.FIELD_COUNT_SINGLE | 1000;
+
     // sThreadLocal.get() will return null unless you've called prepare().
     static final ThreadLocal<Looper> sThreadLocal = new ThreadLocal<Looper>();
     private static Looper sMainLooper;  // guarded by Looper.class
@@ -83,6 +90,8 @@ public final class Looper {
 
     private Printer mLogging;
     private long mTraceTag;
+    private LooperStats mStats;
+    private MessagePool mMessagePool;
 
     /**
      * If set, the looper will show a warning log if a message dispatch takes longer than this.
@@ -178,6 +187,7 @@ public final class Looper {
             }
 
             final long traceTag = me.mTraceTag;
+            final LooperStats stats = me.mStats;
             long slowDispatchThresholdMs = me.mSlowDispatchThresholdMs;
             long slowDeliveryThresholdMs = me.mSlowDeliveryThresholdMs;
             if (thresholdOverride > 0) {
@@ -194,7 +204,9 @@ public final class Looper {
                 Trace.traceBegin(traceTag, msg.target.getTraceName(msg));
             }
 
-            final long dispatchStart = needStartTime ? SystemClock.uptimeMillis() : 0;
+            final long dispatchStart = needStartTime || (stats != null && msg.when > 0)
+                    ? SystemClock.uptimeMillis() : 0;
+            final long statsStart = stats != null ? System.nanoTime() : 0;
             final long dispatchEnd;
             try {
                 msg.target.dispatchMessage(msg);
@@ -204,6 +216,11 @@ public final class Looper {
                     Trace.traceEnd(traceTag);
                 }
             }
+            if (stats != null) {
+                stats.recordDispatch(msg.target.getClass(), msg.what,
+                        System.nanoTime() - statsStart,
+                        msg.when > 0 ? dispatchStart - msg.when : LooperStats.NO_DELAY);
+            }
             if (logSlowDelivery) {
                 if (slowDeliveryDetected) {
                     if ((dispatchStart - msg.when) <= 10) {
@@ -237,6 +254,15 @@ public final class Looper {
                         + msg.callback + " what=" + msg.what);
             }
 
+            recycle(me, msg);
+        }
+    }
+
+    private static void recycle(Looper me, Message msg) {
+        final MessagePool pool = me.mMessagePool;
+        if (pool != null && MessagePool.isPooled(msg)) {
+            pool.recycleUnchecked(msg);
+        } else {
             msg.recycleUnchecked();
         }
     }
@@ -310,6 +336,32 @@ public final class Looper {
         mSlowDeliveryThresholdMs = slowDeliveryThresholdMs;
     }
 
+    /**
+     * Makes {@link #loop} recycle dispatched messages that were obtained from {@code pool} into
+     * it instead of the global pool of {@link Message}, or stop doing so if null. Other
+     * messages still go back to the global pool.
+     * {@hide}
+     */
+    public void setMessagePool(@Nullable MessagePool pool) {
+        mMessagePool = pool;
+    }
+
+    /**
+     * Sets the collector of dispatch statistics for this looper, or null to stop collecting.
+     * {@hide}
+     */
+    public void setStats(@Nullable LooperStats stats) {
+        mStats = stats;
+    }
+
+    /**
+     * Returns the collector of dispatch statistics for this looper, or null.
+     * {@hide}
+     */
+    public @Nullable LooperStats getStats() {
+        return mStats;
+    }
+
     /**
      * Quits the looper.
      * <p>
@@ -394,6 +446,10 @@ public final class Looper {
         proto.write(LooperProto.THREAD_NAME, mThread.getName());
         proto.write(LooperProto.THREAD_ID, mThread.getId());
         mQueue.writeToProto(proto, LooperProto.QUEUE);
+        final LooperStats stats = mStats;
+        if (stats != null) {
+            stats.writeToProto(proto, LOOPER_STATS);
+        }
         proto.end(looperToken);
     }
 
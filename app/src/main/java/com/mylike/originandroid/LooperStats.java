@@ -0,0 +1,418 @@
+package com.mylike.originandroid;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.Handler;
+import android.util.proto.ProtoOutputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects dispatch statistics for one {@link Looper}: for every
+ * ({@link Handler} class, {@code what}) pair, a histogram of how long
+ * dispatching took and a histogram of how long messages waited past their
+ * due time.
+ *
+ * <p>Only the looper's thread records, so recording takes no lock. The
+ * histograms of a pair are allocated when its first message is recorded;
+ * after that recording does not allocate. Pairs beyond {@link #MAX_ENTRIES}
+ * are counted together in an overflow entry whose handler class is null.
+ *
+ * <p>{@link #snapshot()} and {@link #reset()} may be called from any
+ * thread. A snapshot taken while messages are dispatched may be slightly
+ * inconsistent, for example one histogram counting a message the other
+ * does not count yet, or a bucket counting a value the total does not
+ * include yet. No single value is ever torn: the looper thread writes the
+ * histograms with {@link AtomicLongArray#lazySet}, which is atomic for
+ * longs on 32-bit devices too and needs no full fence.
+ *
+ * <p>Besides the histograms, counters are kept of things other threads do
+ * for this looper, such as messages merged by a {@link CoalescingHandler},
+ * and of the hits and allocations of a {@link MessagePool} set with
+ * {@link #setMessagePool}.
+ *
+ * <p>Install on a looper with {@link Looper#setStats}.
+ *
+ * @hide
+ */
+public final class LooperStats {
+    /** Maximum number of (handler class, what) pairs tracked separately. */
+    public static final int MAX_ENTRIES = 128;
+
+    /**
+     * Number of histogram buckets. Bucket 0 counts zero values, bucket
+     * {@code i} counts values in [2<sup>i-1</sup>, 2<sup>i</sup>), and the
+     * last bucket also counts everything larger.
+     */
+    public static final int BUCKETS = 32;
+
+    // Field ids of the LooperStats message written by writeToProto.
+    private static final long ENTRIES = fieldId(1, ProtoOutputStream.FIELD_TYPE_MESSAGE,
+            ProtoOutputStream.FIELD_COUNT_REPEATED);
+    private static final long ENTRY_HANDLER_CLASS = fieldId(1,
+            ProtoOutputStream.FIELD_TYPE_STRING, ProtoOutputStream.FIELD_COUNT_SINGLE);
+    private static final long ENTRY_WHAT = fieldId(2, ProtoOutputStream.FIELD_TYPE_INT32,
+            ProtoOutputStream.FIELD_COUNT_SINGLE);
+    private static final long ENTRY_DISPATCH = fieldId(3, ProtoOutputStream.FIELD_TYPE_MESSAGE,
+            ProtoOutputStream.FIELD_COUNT_SINGLE);
+    private static final long ENTRY_DELAY = fieldId(4, ProtoOutputStream.FIELD_TYPE_MESSAGE,
+            ProtoOutputStream.FIELD_COUNT_SINGLE);
+    private static final long HISTOGRAM_COUNT = fieldId(1, ProtoOutputStream.FIELD_TYPE_INT64,
+            ProtoOutputStream.FIELD_COUNT_SINGLE);
+    private static final long HISTOGRAM_SUM = fieldId(2, ProtoOutputStream.FIELD_TYPE_INT64,
+            ProtoOutputStream.FIELD_COUNT_SINGLE);
+    private static final long HISTOGRAM_MAX = fieldId(3, ProtoOutputStream.FIELD_TYPE_INT64,
+            ProtoOutputStream.FIELD_COUNT_SINGLE);
+    private static final long HISTOGRAM_BUCKETS = fieldId(4, ProtoOutputStream.FIELD_TYPE_INT64,
+            ProtoOutputStream.FIELD_COUNT_PACKED);
+
+    private static final long MERGED_MESSAGES = fieldId(2, ProtoOutputStream.FIELD_TYPE_INT64,
+            ProtoOutputStream.FIELD_COUNT_SINGLE);
+    private static final long POOL_HITS = fieldId(3, ProtoOutputStream.FIELD_TYPE_INT64,
+            ProtoOutputStream.FIELD_COUNT_SINGLE);
+    private static final long POOL_ALLOCATIONS = fieldId(4, ProtoOutputStream.FIELD_TYPE_INT64,
+            ProtoOutputStream.FIELD_COUNT_SINGLE);
+
+    private static long fieldId(int number, long type, long count) {
+        return type | count | number;
+    }
+
+    // Open addressing on the handler class and what; slots are never freed.
+    private final Entry[] mEntries = new Entry[MAX_ENTRIES * 2];
+    private final Entry mOverflow = new Entry(null, 0);
+    private int mSize;
+
+    /**
+     * Bumped by {@link #reset()}. Entries recorded under an older generation
+     * are cleared by the looper thread when next recorded, and skipped by
+     * snapshots.
+     */
+    private volatile int mGeneration;
+
+    private final AtomicLong mMergedMessages = new AtomicLong();
+
+    // The pool's counters are cumulative; these are their values at the last reset.
+    private volatile MessagePool mMessagePool;
+    private volatile long mPoolHitsAtReset;
+    private volatile long mPoolAllocationsAtReset;
+
+    /**
+     * Passed to {@link #recordDispatch} for a message that had no due time,
+     * such as one posted at the front of the queue; it is left out of the
+     * delay histogram.
+     */
+    static final long NO_DELAY = Long.MIN_VALUE;
+
+    /**
+     * Records one dispatched message. Must only be called on the looper's
+     * thread.
+     *
+     * @param handlerClass the class of the message's target
+     * @param what the message's what
+     * @param dispatchNanos how long dispatching took
+     * @param delayMillis how long the message waited past its due time, or
+     * {@link #NO_DELAY}
+     */
+    void recordDispatch(Class<?> handlerClass, int what, long dispatchNanos, long delayMillis) {
+        Entry entry = entryFor(handlerClass, what);
+        int generation = mGeneration;
+        if (entry.generation != generation) {
+            entry.clear(generation);
+        }
+        entry.dispatchNanos.record(dispatchNanos);
+        if (delayMillis != NO_DELAY) {
+            entry.delayMillis.record(delayMillis);
+        }
+    }
+
+    /** Records one message merged into a pending one instead of being enqueued. */
+    void recordMergedMessage() {
+        mMergedMessages.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of messages merged into pending ones, and so never
+     * dispatched on their own, since the last {@link #reset()}.
+     */
+    public long getMergedMessageCount() {
+        return mMergedMessages.get();
+    }
+
+    /**
+     * Sets the message pool whose hits and allocations are reported, or null.
+     */
+    public void setMessagePool(@Nullable MessagePool pool) {
+        mMessagePool = pool;
+        if (pool != null) {
+            mPoolHitsAtReset = pool.getHitCount();
+            mPoolAllocationsAtReset = pool.getAllocationCount();
+        }
+    }
+
+    /**
+     * Returns how many messages obtained from the message pool were reused
+     * since the last {@link #reset()}, or 0 without a pool.
+     */
+    public long getMessagePoolHitCount() {
+        final MessagePool pool = mMessagePool;
+        return pool != null ? pool.getHitCount() - mPoolHitsAtReset : 0;
+    }
+
+    /**
+     * Returns how many messages obtained from the message pool had to be
+     * allocated since the last {@link #reset()}, or 0 without a pool.
+     */
+    public long getMessagePoolAllocationCount() {
+        final MessagePool pool = mMessagePool;
+        return pool != null ? pool.getAllocationCount() - mPoolAllocationsAtReset : 0;
+    }
+
+    /**
+     * Returns the share of messages obtained from the message pool that were
+     * reused since the last {@link #reset()}, from 0 to 1, or NaN if none
+     * were obtained.
+     */
+    public double getMessagePoolHitRate() {
+        final long hits = getMessagePoolHitCount();
+        final long total = hits + getMessagePoolAllocationCount();
+        return total > 0 ? (double) hits / total : Double.NaN;
+    }
+
+    private Entry entryFor(Class<?> handlerClass, int what) {
+        final Entry[] entries = mEntries;
+        final int mask = entries.length - 1;
+        int i = (System.identityHashCode(handlerClass) * 31 + what) & mask;
+        Entry entry;
+        while ((entry = entries[i]) != null) {
+            if (entry.handlerClass == handlerClass && entry.what == what) {
+                return entry;
+            }
+            i = (i + 1) & mask;
+        }
+        if (mSize == MAX_ENTRIES) {
+            return mOverflow;
+        }
+        entry = new Entry(handlerClass, what);
+        entry.generation = mGeneration;
+        entries[i] = entry;
+        mSize++;
+        return entry;
+    }
+
+    /**
+     * Returns the statistics recorded since the last {@link #reset()}, one
+     * element per (handler class, what) pair that saw a message.
+     */
+    public @NonNull List<EntrySnapshot> snapshot() {
+        final int generation = mGeneration;
+        final Entry[] entries = mEntries;
+        final List<EntrySnapshot> result = new ArrayList<EntrySnapshot>();
+        for (Entry entry : entries) {
+            if (entry != null) {
+                addSnapshot(result, entry, generation);
+            }
+        }
+        addSnapshot(result, mOverflow, generation);
+        return result;
+    }
+
+    private static void addSnapshot(List<EntrySnapshot> result, Entry entry, int generation) {
+        if (entry.generation == generation && entry.dispatchNanos.count() > 0) {
+            result.add(new EntrySnapshot(entry.handlerClass, entry.what,
+                    entry.dispatchNanos.snapshot(), entry.delayMillis.snapshot()));
+        }
+    }
+
+    /**
+     * Forgets everything recorded so far. May be called from any thread.
+     */
+    public void reset() {
+        mGeneration++;
+        mMergedMessages.set(0);
+        final MessagePool pool = mMessagePool;
+        if (pool != null) {
+            mPoolHitsAtReset = pool.getHitCount();
+            mPoolAllocationsAtReset = pool.getAllocationCount();
+        }
+    }
+
+    /**
+     * Writes the current snapshot as a {@code LooperStats} message: repeated
+     * entries, each with the handler class name, what, and a dispatch time
+     * (nanoseconds) and a delay (milliseconds) histogram, followed by the
+     * counters.
+     */
+    public void writeToProto(@NonNull ProtoOutputStream proto, long fieldId) {
+        final long statsToken = proto.start(fieldId);
+        for (EntrySnapshot entry : snapshot()) {
+            final long entryToken = proto.start(ENTRIES);
+            if (entry.handlerClass != null) {
+                proto.write(ENTRY_HANDLER_CLASS, entry.handlerClass.getName());
+            }
+            proto.write(ENTRY_WHAT, entry.what);
+            writeHistogram(proto, ENTRY_DISPATCH, entry.dispatchNanos);
+            writeHistogram(proto, ENTRY_DELAY, entry.delayMillis);
+            proto.end(entryToken);
+        }
+        proto.write(MERGED_MESSAGES, getMergedMessageCount());
+        if (mMessagePool != null) {
+            proto.write(POOL_HITS, getMessagePoolHitCount());
+            proto.write(POOL_ALLOCATIONS, getMessagePoolAllocationCount());
+        }
+        proto.end(statsToken);
+    }
+
+    private static void writeHistogram(ProtoOutputStream proto, long fieldId,
+            HistogramSnapshot histogram) {
+        final long token = proto.start(fieldId);
+        proto.write(HISTOGRAM_COUNT, histogram.count);
+        proto.write(HISTOGRAM_SUM, histogram.sum);
+        proto.write(HISTOGRAM_MAX, histogram.max);
+        proto.writePackedInt64(HISTOGRAM_BUCKETS, histogram.buckets);
+        proto.end(token);
+    }
+
+    private static final class Entry {
+        final Class<?> handlerClass;
+        final int what;
+        final Histogram dispatchNanos = new Histogram();
+        final Histogram delayMillis = new Histogram();
+        // written by the looper thread, read by snapshots
+        volatile int generation;
+
+        Entry(Class<?> handlerClass, int what) {
+            this.handlerClass = handlerClass;
+            this.what = what;
+        }
+
+        void clear(int generation) {
+            dispatchNanos.clear();
+            delayMillis.clear();
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * A histogram written by a single thread and read by any. The buckets
+     * are followed by the count, sum and max; being the only writer, the
+     * recording thread updates them with plain reads and lazySet.
+     */
+    private static final class Histogram {
+        private static final int COUNT = BUCKETS;
+        private static final int SUM = BUCKETS + 1;
+        private static final int MAX = BUCKETS + 2;
+
+        private final AtomicLongArray mValues = new AtomicLongArray(BUCKETS + 3);
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            final AtomicLongArray values = mValues;
+            int bucket = 64 - Long.numberOfLeadingZeros(value);
+            if (bucket >= BUCKETS) {
+                bucket = BUCKETS - 1;
+            }
+            values.lazySet(bucket, values.get(bucket) + 1);
+            values.lazySet(SUM, values.get(SUM) + value);
+            if (value > values.get(MAX)) {
+                values.lazySet(MAX, value);
+            }
+            values.lazySet(COUNT, values.get(COUNT) + 1);
+        }
+
+        long count() {
+            return mValues.get(COUNT);
+        }
+
+        void clear() {
+            for (int i = 0; i < BUCKETS + 3; i++) {
+                mValues.lazySet(i, 0);
+            }
+        }
+
+        HistogramSnapshot snapshot() {
+            final long[] buckets = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = mValues.get(i);
+            }
+            return new HistogramSnapshot(buckets, mValues.get(COUNT), mValues.get(SUM),
+                    mValues.get(MAX));
+        }
+    }
+
+    /** The statistics of one (handler class, what) pair. */
+    public static final class EntrySnapshot {
+        /** The handler class, or null for the overflow entry. */
+        public final @Nullable Class<?> handlerClass;
+        public final int what;
+        /** How long dispatching took, in nanoseconds. */
+        public final @NonNull HistogramSnapshot dispatchNanos;
+        /** How long messages waited past their due time, in milliseconds. */
+        public final @NonNull HistogramSnapshot delayMillis;
+
+        EntrySnapshot(Class<?> handlerClass, int what, HistogramSnapshot dispatchNanos,
+                HistogramSnapshot delayMillis) {
+            this.handlerClass = handlerClass;
+            this.what = what;
+            this.dispatchNanos = dispatchNanos;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public String toString() {
+            return (handlerClass != null ? handlerClass.getName() : "<overflow>")
+                    + " what=" + what + " dispatch(ns)=" + dispatchNanos
+                    + " delay(ms)=" + delayMillis;
+        }
+    }
+
+    /** A copy of a histogram. */
+    public static final class HistogramSnapshot {
+        /** Counts per bucket, see {@link #BUCKETS}. */
+        public final @NonNull long[] buckets;
+        public final long count;
+        public final long sum;
+        public final long max;
+
+        HistogramSnapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns an upper bound of the value at {@code percentile} (0 to 100):
+         * the upper end of the bucket holding it, capped at {@link #max}.
+         */
+        public long valueAtPercentile(double percentile) {
+            long total = 0;
+            for (long bucketCount : buckets) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && buckets[i] > 0) {
+                    return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", mean=" + (count > 0 ? sum / count : 0)
+                    + ", p50=" + valueAtPercentile(50) + ", p99=" + valueAtPercentile(99)
+                    + ", max=" + max + "}";
+        }
+    }
+}
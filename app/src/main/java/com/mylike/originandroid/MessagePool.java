@@ -0,0 +1,232 @@
+package com.mylike.originandroid;
+
+import android.annotation.NonNull;
+import android.os.Handler;
+import android.os.Message;
+
+/**
+ * A pool of recycled {@link Message} objects split into stripes, replacing
+ * the single global pool of {@link Message#obtain()}, whose one lock every
+ * posting thread and every looper contends on.
+ *
+ * <p>A thread obtains from and recycles into the stripe picked by its id,
+ * so threads mostly lock different stripes. A thread whose stripe is empty
+ * steals from the other stripes before allocating: a looper recycles every
+ * message it dispatched into its own stripe, and the threads posting to it
+ * take them back from there. There is one stripe per CPU, but no more than
+ * {@link #MAX_STRIPES}, so that a thread with an empty stripe has few locks
+ * to try; empty and full stripes are skipped without taking their lock. A
+ * message recycled into a full stripe goes to the next stripe with room, and
+ * is dropped if all are full.
+ *
+ * <p>Only messages obtained from a pool are recycled into it. Any other
+ * message, e.g. one a Handler obtained from {@link Message#obtain()}, goes
+ * back to the global pool.
+ *
+ * <p>{@link #obtain} and {@link #recycle} behave like their counterparts on
+ * {@link Message}. Install on a looper with {@link Looper#setMessagePool}
+ * so that {@link Looper#loop} recycles into it, and report its counters
+ * through {@link LooperStats#setMessagePool}.
+ *
+ * @hide
+ */
+public final class MessagePool {
+    /** Maximum number of messages held by all stripes together. */
+    public static final int MAX_POOL_SIZE = 64;
+
+    /** Maximum number of stripes, each holding {@link #MAX_POOL_SIZE} / stripes messages. */
+    public static final int MAX_STRIPES = 4;
+
+    /** Set in {@link Message#flags} of messages obtained from a MessagePool. */
+    static final int FLAG_POOLED = 1 << 30;
+
+    private final Stripe[] mStripes;
+    private final int mMask;
+
+    public MessagePool() {
+        int stripes = 1;
+        final int cpus = Runtime.getRuntime().availableProcessors();
+        while (stripes < cpus && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        mStripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            mStripes[i] = new Stripe(MAX_POOL_SIZE / stripes);
+        }
+        mMask = stripes - 1;
+    }
+
+    /**
+     * Return a new Message instance from the pool. Allows us to
+     * avoid allocating new objects in many cases.
+     */
+    public @NonNull Message obtain() {
+        final int home = (int) Thread.currentThread().getId() & mMask;
+        Message m = mStripes[home].pop(true);
+        // 本条带为空时依次从其它条带窃取，都为空才分配新对象
+        for (int i = 1; m == null && i <= mMask; i++) {
+            final Stripe stripe = mStripes[(home + i) & mMask];
+            if (!stripe.isEmpty()) {
+                m = stripe.pop(false);
+            }
+        }
+        if (m == null) {
+            m = new Message();
+        }
+        m.flags = FLAG_POOLED; // clear in-use flag
+        return m;
+    }
+
+    /**
+     * Same as {@link #obtain()}, but sets the values of the <em>target</em> and
+     * <em>what</em> members on the Message returned.
+     */
+    public @NonNull Message obtain(Handler h, int what) {
+        final Message m = obtain();
+        m.target = h;
+        m.what = what;
+        return m;
+    }
+
+    /**
+     * Same as {@link #obtain()}, but sets the values of the <em>target</em>,
+     * <em>what</em> and <em>obj</em> members on the Message returned.
+     */
+    public @NonNull Message obtain(Handler h, int what, Object obj) {
+        final Message m = obtain(h, what);
+        m.obj = obj;
+        return m;
+    }
+
+    /**
+     * Return a Message instance to the pool, or to the global pool if it was
+     * not obtained from a MessagePool.
+     * <p>
+     * You MUST NOT touch the Message after calling this function because it has
+     * effectively been freed.  It is an error to recycle a message that is currently
+     * enqueued or that is in the process of being delivered to a Handler.
+     * </p>
+     */
+    public void recycle(@NonNull Message msg) {
+        if (!isPooled(msg)) {
+            msg.recycle();
+            return;
+        }
+        if (msg.isInUse()) {
+            throw new IllegalStateException("This message cannot be recycled because it "
+                    + "is still in use.");
+        }
+        recycleUnchecked(msg);
+    }
+
+    /** Returns whether {@code msg} was obtained from a MessagePool. */
+    static boolean isPooled(@NonNull Message msg) {
+        return (msg.flags & FLAG_POOLED) != 0;
+    }
+
+    /**
+     * Recycles a Message that may be in-use and was obtained from a MessagePool.
+     * Used internally by the Looper when disposing of queued Messages.
+     */
+    void recycleUnchecked(@NonNull Message msg) {
+        // Mark the message as in use while it remains in the recycled object pool.
+        // Clear out all other details.
+        msg.flags = Message.FLAG_IN_USE | FLAG_POOLED;
+        msg.what = 0;
+        msg.arg1 = 0;
+        msg.arg2 = 0;
+        msg.obj = null;
+        msg.replyTo = null;
+        msg.sendingUid = -1;
+        msg.when = 0;
+        msg.target = null;
+        msg.callback = null;
+        msg.data = null;
+
+        // 本条带满了就放进下一个未满的条带，全满才丢弃
+        final int home = (int) Thread.currentThread().getId() & mMask;
+        for (int i = 0; i <= mMask; i++) {
+            final Stripe stripe = mStripes[(home + i) & mMask];
+            if (!stripe.isFull() && stripe.push(msg)) {
+                return;
+            }
+        }
+    }
+
+    /** Returns how many obtained messages came from the pool, stolen ones included. */
+    public long getHitCount() {
+        long hits = 0;
+        for (Stripe stripe : mStripes) {
+            hits += stripe.hits + stripe.stolen;
+        }
+        return hits;
+    }
+
+    /** Returns how many obtained messages had to be allocated. */
+    public long getAllocationCount() {
+        long allocations = 0;
+        for (Stripe stripe : mStripes) {
+            allocations += stripe.misses;
+        }
+        // a miss in a thread's own stripe that was stolen elsewhere is a hit there
+        return allocations - getStolenCount();
+    }
+
+    /** Returns how many obtained messages were stolen from another thread's stripe. */
+    public long getStolenCount() {
+        long stolen = 0;
+        for (Stripe stripe : mStripes) {
+            stolen += stripe.stolen;
+        }
+        return stolen;
+    }
+
+    private static final class Stripe {
+        private final Message[] mItems;
+        // Written under the stripe's lock; volatile so that empty and full stripes can be
+        // skipped without taking it.
+        private volatile int mSize;
+        // Counters, written under the stripe's lock and read without it; volatile so that
+        // a read of a long cannot tear on 32-bit devices.
+        volatile long hits;
+        volatile long misses;
+        volatile long stolen;
+
+        Stripe(int capacity) {
+            mItems = new Message[capacity];
+        }
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        boolean isFull() {
+            return mSize == mItems.length;
+        }
+
+        synchronized Message pop(boolean home) {
+            if (mSize == 0) {
+                if (home) {
+                    misses++;
+                }
+                return null;
+            }
+            final Message m = mItems[--mSize];
+            mItems[mSize] = null;
+            if (home) {
+                hits++;
+            } else {
+                stolen++;
+            }
+            return m;
+        }
+
+        synchronized boolean push(Message msg) {
+            if (mSize == mItems.length) {
+                return false;
+            }
+            mItems[mSize++] = msg;
+            return true;
+        }
+    }
+}
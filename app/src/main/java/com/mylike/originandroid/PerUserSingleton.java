@@ -0,0 +1,129 @@
+package com.mylike.originandroid;
+
+/**
+ * Like {@link Singleton}, but lazily creates one instance per user id.
+ *
+ * <p>User ids are spread over a fixed number of stripes. Each stripe keeps
+ * its users in small arrays that are replaced, never modified, so
+ * {@link #get(int)} takes no lock once the instance for a user exists.
+ * Creating an instance locks only its stripe. If {@link #create(int)}
+ * returns null, nothing is cached for that user.
+ *
+ * @hide
+ */
+public abstract class PerUserSingleton<T> {
+    private static final int STRIPES = 16; // power of two
+
+    private final Stripe[] mStripes = new Stripe[STRIPES];
+
+    public PerUserSingleton() {
+        for (int i = 0; i < STRIPES; i++) {
+            mStripes[i] = new Stripe();
+        }
+    }
+
+    protected abstract T create(int userId);
+
+    @SuppressWarnings("unchecked")
+    public final T get(int userId) {
+        Stripe stripe = mStripes[userId & (STRIPES - 1)];
+        Object instance = stripe.find(userId);
+        if (instance != null) {
+            return (T) instance;
+        }
+        synchronized (stripe) {
+            instance = stripe.find(userId);
+            if (instance == null) {
+                instance = create(userId);
+                // find() cannot tell a cached null from a missing entry, so
+                // a null is not cached and create() is asked again next time.
+                if (instance != null) {
+                    stripe.add(userId, instance);
+                }
+            }
+            return (T) instance;
+        }
+    }
+
+    /**
+     * Drops the instance of {@code userId}, for example once the user is
+     * removed, so that the next {@link #get(int)} creates a new one.
+     */
+    public final void reset(int userId) {
+        Stripe stripe = mStripes[userId & (STRIPES - 1)];
+        synchronized (stripe) {
+            stripe.remove(userId);
+        }
+    }
+
+    /**
+     * Drops all instances. Only for tests.
+     */
+    public final void reset() {
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                stripe.mEntries = Entries.EMPTY;
+            }
+        }
+    }
+
+    private static final class Stripe {
+        // 写时复制，读取无需加锁
+        volatile Entries mEntries = Entries.EMPTY;
+
+        Object find(int userId) {
+            Entries entries = mEntries;
+            int[] userIds = entries.userIds;
+            for (int i = 0; i < userIds.length; i++) {
+                if (userIds[i] == userId) {
+                    return entries.instances[i];
+                }
+            }
+            return null;
+        }
+
+        /** Called with the stripe locked. */
+        void add(int userId, Object instance) {
+            Entries old = mEntries;
+            int n = old.userIds.length;
+            int[] userIds = new int[n + 1];
+            Object[] instances = new Object[n + 1];
+            System.arraycopy(old.userIds, 0, userIds, 0, n);
+            System.arraycopy(old.instances, 0, instances, 0, n);
+            userIds[n] = userId;
+            instances[n] = instance;
+            mEntries = new Entries(userIds, instances);
+        }
+
+        /** Called with the stripe locked. */
+        void remove(int userId) {
+            Entries old = mEntries;
+            int n = old.userIds.length;
+            for (int i = 0; i < n; i++) {
+                if (old.userIds[i] == userId) {
+                    int[] userIds = new int[n - 1];
+                    Object[] instances = new Object[n - 1];
+                    System.arraycopy(old.userIds, 0, userIds, 0, i);
+                    System.arraycopy(old.instances, 0, instances, 0, i);
+                    System.arraycopy(old.userIds, i + 1, userIds, i, n - i - 1);
+                    System.arraycopy(old.instances, i + 1, instances, i, n - i - 1);
+                    mEntries = new Entries(userIds, instances);
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Parallel arrays of user ids and their instances, published together. */
+    private static final class Entries {
+        static final Entries EMPTY = new Entries(new int[0], new Object[0]);
+
+        final int[] userIds;
+        final Object[] instances;
+
+        Entries(int[] userIds, Object[] instances) {
+            this.userIds = userIds;
+            this.instances = instances;
+        }
+    }
+}
@@ -20,17 +20,42 @@ import com.android.internal.os.BinderInternal;
 
 import android.os.IBinder;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** @hide */
 public final class ServiceManager {
     private static final String TAG = "ServiceManager";
 
-    private static IServiceManager sServiceManager;
-    private static HashMap<String, IBinder> sCache = new HashMap<String, IBinder>();
+    /** Maximum number of names remembered as missing. */
+    private static final int NEGATIVE_CACHE_SIZE = 64;
+    /** How long a name is remembered as missing, in uptime millis. */
+    private static final long NEGATIVE_CACHE_TTL_MS = 5000;
+
+    private static volatile IServiceManager sServiceManager;
+    private static final ConcurrentHashMap<String, IBinder> sCache =
+            new ConcurrentHashMap<String, IBinder>();
+    /**
+     * Names the service manager recently reported as missing, with the
+     * uptime at which that answer expires. Lets repeated lookups of a
+     * missing service skip the IPC.
+     */
+    private static final ConcurrentHashMap<String, Long> sMissing =
+            new ConcurrentHashMap<String, Long>();
+    /**
+     * Bumped by every {@link #addService} before it clears the name's
+     * negative entry. A lookup that saw a different value before its IPC may
+     * have been answered before the service was added, so its null answer is
+     * not remembered.
+     */
+    private static final AtomicInteger sAddCount = new AtomicInteger();
+    private static volatile long sNegativeCacheTtlMs = NEGATIVE_CACHE_TTL_MS;
 
     private static IServiceManager getIServiceManager() {
         if (sServiceManager != null) {
@@ -42,19 +67,91 @@ public final class ServiceManager {
         return sServiceManager;
     }
 
+    /**
+     * Replaces the service manager, and clears both caches. Only for tests,
+     * which pass a local stand-in to count the lookups that reach it.
+     *
+     * @hide
+     */
+    public static void setServiceManagerForTest(IServiceManager serviceManager) {
+        sServiceManager = serviceManager;
+        sCache.clear();
+        sMissing.clear();
+        sNegativeCacheTtlMs = NEGATIVE_CACHE_TTL_MS;
+    }
+
+    /**
+     * Changes how long a name is remembered as missing. Only for tests.
+     *
+     * @hide
+     */
+    public static void setNegativeCacheTtlForTest(long ttlMs) {
+        sNegativeCacheTtlMs = ttlMs;
+    }
+
+    private static boolean isKnownMissing(String name) {
+        Long expiry = sMissing.get(name);
+        if (expiry == null) {
+            return false;
+        }
+        if (SystemClock.uptimeMillis() < expiry) {
+            return true;
+        }
+        sMissing.remove(name, expiry);
+        return false;
+    }
+
+    /**
+     * Remembers a null answer to a lookup that started when
+     * {@link #sAddCount} was {@code addCount}, unless a service was added
+     * since then.
+     */
+    private static IBinder rememberResult(String name, IBinder service, int addCount) {
+        if (service != null) {
+            sMissing.remove(name);
+            return service;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (sMissing.size() >= NEGATIVE_CACHE_SIZE) {
+            // 先清掉过期的；仍然满了就不再记录，保证有界
+            for (Iterator<Long> it = sMissing.values().iterator(); it.hasNext(); ) {
+                if (it.next() <= now) {
+                    it.remove();
+                }
+            }
+            if (sMissing.size() >= NEGATIVE_CACHE_SIZE) {
+                return null;
+            }
+        }
+        if (sAddCount.get() != addCount) {
+            return null;
+        }
+        final Long expiry = now + sNegativeCacheTtlMs;
+        sMissing.put(name, expiry);
+        // addService() may have cleared the name between the check and the put.
+        if (sAddCount.get() != addCount) {
+            sMissing.remove(name, expiry);
+        }
+        return null;
+    }
+
     /**
      * Returns a reference to a service with the given name.
      * 
      * @param name the name of the service to get
      * @return a reference to the service, or <code>null</code> if the service doesn't exist
+     * (or was reported missing within the last few seconds)
      */
     public static IBinder getService(String name) {
         try {
             IBinder service = sCache.get(name);
             if (service != null) {
                 return service;
+            } else if (isKnownMissing(name)) {
+                return null;
             } else {
-                return getIServiceManager().getService(name);
+                final int addCount = sAddCount.get();
+                return rememberResult(name, getIServiceManager().getService(name), addCount);
             }
         } catch (RemoteException e) {
             Log.e(TAG, "error in getService", e);
@@ -62,6 +159,37 @@ public final class ServiceManager {
         return null;
     }
 
+    /**
+     * Returns references to the services with the given names, in the same
+     * order. Names that are cached, or known to be missing, are answered
+     * without IPC, and each remaining name is looked up only once.
+     *
+     * @param names the names of the services to get
+     * @return the references, with <code>null</code> for services that don't exist
+     */
+    public static IBinder[] getServices(String... names) {
+        IBinder[] services = new IBinder[names.length];
+        Map<String, IBinder> fetched = null;
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            IBinder service = sCache.get(name);
+            if (service != null || isKnownMissing(name)) {
+                services[i] = service;
+                continue;
+            }
+            if (fetched == null) {
+                fetched = new HashMap<String, IBinder>();
+            } else if (fetched.containsKey(name)) {
+                services[i] = fetched.get(name);
+                continue;
+            }
+            service = getService(name);
+            fetched.put(name, service);
+            services[i] = service;
+        }
+        return services;
+    }
+
     /**
      * Place a new @a service called @a name into the service
      * manager.
@@ -70,6 +198,8 @@ public final class ServiceManager {
      * @param service the service object
      */
     public static void addService(String name, IBinder service) {
+        sAddCount.incrementAndGet();
+        sMissing.remove(name);
         try {
             getIServiceManager().addService(name, service, false);
         } catch (RemoteException e) {
@@ -87,6 +217,8 @@ public final class ServiceManager {
      * to access this service
      */
     public static void addService(String name, IBinder service, boolean allowIsolated) {
+        sAddCount.incrementAndGet();
+        sMissing.remove(name);
         try {
             getIServiceManager().addService(name, service, allowIsolated);
         } catch (RemoteException e) {
@@ -103,8 +235,11 @@ public final class ServiceManager {
             IBinder service = sCache.get(name);
             if (service != null) {
                 return service;
+            } else if (isKnownMissing(name)) {
+                return null;
             } else {
-                return getIServiceManager().checkService(name);
+                final int addCount = sAddCount.get();
+                return rememberResult(name, getIServiceManager().checkService(name), addCount);
             }
         } catch (RemoteException e) {
             Log.e(TAG, "error in checkService", e);
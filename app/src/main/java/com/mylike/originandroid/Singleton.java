@@ -21,19 +21,38 @@ package com.mylike.originandroid;
  *
  * Modeled after frameworks/base/include/utils/Singleton.h
  *
+ * <p>Once created, the instance is read through a volatile field, so
+ * {@link #get()} takes no lock after initialization. {@link #create()} is
+ * still called at most once until {@link #reset()}.
+ *
  * @hide
  */
 public abstract class Singleton<T> {
-    private T mInstance;
+    private volatile T mInstance;
 
     protected abstract T create();
 
     public final T get() {
+        T instance = mInstance;
+        if (instance != null) {
+            return instance;
+        }
         synchronized (this) {
-            if (mInstance == null) {
-                mInstance = create();
+            instance = mInstance;
+            if (instance == null) {
+                mInstance = instance = create();
             }
-            return mInstance;
+            return instance;
+        }
+    }
+
+    /**
+     * Drops the instance so that the next {@link #get()} creates a new one.
+     * Only for tests.
+     */
+    public final void reset() {
+        synchronized (this) {
+            mInstance = null;
         }
     }
 }
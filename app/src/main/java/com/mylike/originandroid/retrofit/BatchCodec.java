@@ -0,0 +1,194 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Encodes requests into a {@code multipart/mixed} batch and splits a batch response back into
+ * individual responses. Every part is an {@code application/http} message: the request or status
+ * line, its headers, a blank line and the body. Parts are matched by their {@code Content-ID}
+ * ({@code <n>} in the request, {@code <n>} or {@code <response-n>} in the response), falling back
+ * to their position.
+ */
+final class BatchCodec {
+    static final MediaType MIXED = MediaType.get("multipart/mixed");
+    private static final MediaType HTTP = MediaType.get("application/http");
+    private static final ByteString CRLF = ByteString.encodeUtf8("\r\n");
+    private static final ByteString CRLF_CRLF = ByteString.encodeUtf8("\r\n\r\n");
+
+    private BatchCodec() {
+    }
+
+    static RequestBody encode(List<Request> requests) throws IOException {
+        MultipartBody.Builder builder = new MultipartBody.Builder().setType(MIXED);
+        for (int i = 0, size = requests.size(); i < size; i++) {
+            Request request = requests.get(i);
+            Buffer http = new Buffer();
+            String query = request.url().encodedQuery();
+            http.writeUtf8(request.method()).writeUtf8(" ")
+                    .writeUtf8(request.url().encodedPath())
+                    .writeUtf8(query != null ? "?" + query : "")
+                    .writeUtf8(" HTTP/1.1\r\n")
+                    .writeUtf8("Host: ").writeUtf8(request.url().host()).writeUtf8("\r\n");
+            Headers headers = request.headers();
+            for (int h = 0, count = headers.size(); h < count; h++) {
+                http.writeUtf8(headers.name(h)).writeUtf8(": ").writeUtf8(headers.value(h))
+                        .writeUtf8("\r\n");
+            }
+            http.writeUtf8("\r\n");
+            builder.addPart(Headers.of("Content-ID", "<" + i + ">"),
+                    RequestBody.create(HTTP, http.readByteString()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Splits {@code batch} into one response per request, in request order. A request without a
+     * matching part gets null.
+     */
+    static List<Response> decode(Response batch, List<Request> requests) throws IOException {
+        ResponseBody body = batch.body();
+        MediaType contentType = body.contentType();
+        String boundary = contentType != null ? contentType.toString() : "";
+        int start = boundary.indexOf("boundary=");
+        if (start == -1) {
+            throw new ProtocolException("Batch response is not multipart: " + contentType);
+        }
+        boundary = boundary.substring(start + "boundary=".length());
+        int end = boundary.indexOf(';');
+        if (end != -1) boundary = boundary.substring(0, end);
+        boundary = boundary.trim();
+        if (boundary.startsWith("\"") && boundary.endsWith("\"") && boundary.length() > 1) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+
+        ByteString content = body.source().readByteString();
+        ByteString delimiter = ByteString.encodeUtf8("--" + boundary);
+        List<Response> responses = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            responses.add(null);
+        }
+
+        int position = content.indexOf(delimiter);
+        int index = 0;
+        while (position != -1) {
+            int partStart = position + delimiter.size();
+            if (content.rangeEquals(partStart, ByteString.encodeUtf8("--"), 0, 2)) {
+                break; // Closing delimiter.
+            }
+            int lineEnd = content.indexOf(CRLF, partStart);
+            if (lineEnd == -1) throw new ProtocolException("Unterminated batch delimiter");
+            partStart = lineEnd + CRLF.size();
+            int next = content.indexOf(ByteString.encodeUtf8("\r\n--" + boundary), partStart);
+            if (next == -1) {
+                throw new ProtocolException("Unterminated batch part");
+            }
+            ByteString part = content.substring(partStart, next);
+            int slot = index++;
+
+            Headers partHeaders;
+            ByteString http;
+            if (part.startsWith(CRLF)) {
+                partHeaders = Headers.of();
+                http = part.substring(CRLF.size());
+            } else {
+                int partHeadersEnd = part.indexOf(CRLF_CRLF);
+                if (partHeadersEnd == -1) throw new ProtocolException("Malformed batch part");
+                partHeaders = parseHeaders(part.substring(0, partHeadersEnd).utf8());
+                http = part.substring(partHeadersEnd + CRLF_CRLF.size());
+            }
+            Integer contentId = contentId(partHeaders.get("Content-ID"));
+            if (contentId != null) slot = contentId;
+
+            if (slot >= 0 && slot < requests.size()) {
+                responses.set(slot, parseHttp(http, requests.get(slot)));
+            }
+            position = next + CRLF.size();
+        }
+        return responses;
+    }
+
+    private static Response parseHttp(ByteString http, Request request) throws IOException {
+        int statusEnd = http.indexOf(CRLF);
+        if (statusEnd == -1) throw new ProtocolException("Missing status line in batch part");
+        String statusLine = http.substring(0, statusEnd).utf8();
+        String[] status = statusLine.split(" ", 3);
+        if (status.length < 2) throw new ProtocolException("Unexpected status line: " + statusLine);
+        int code;
+        try {
+            code = Integer.parseInt(status[1]);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Unexpected status line: " + statusLine);
+        }
+        if (code < 100 || code > 999) {
+            throw new ProtocolException("Unexpected status line: " + statusLine);
+        }
+
+        int headersEnd = http.indexOf(CRLF_CRLF, statusEnd);
+        Headers headers;
+        ByteString body;
+        if (headersEnd == -1) {
+            headers = parseHeaders(http.substring(statusEnd + CRLF.size()).utf8());
+            body = ByteString.EMPTY;
+        } else if (headersEnd == statusEnd) {
+            headers = Headers.of();
+            body = http.substring(headersEnd + CRLF_CRLF.size());
+        } else {
+            headers = parseHeaders(http.substring(statusEnd + CRLF.size(), headersEnd).utf8());
+            body = http.substring(headersEnd + CRLF_CRLF.size());
+        }
+        String contentType = headers.get("Content-Type");
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(status.length > 2 ? status[2] : "")
+                .headers(headers)
+                .body(ResponseBody.create(contentType != null ? MediaType.parse(contentType) : null,
+                        body.toByteArray()))
+                .build();
+    }
+
+    private static Headers parseHeaders(String block) throws ProtocolException {
+        Headers.Builder builder = new Headers.Builder();
+        for (String line : block.split("\r\n")) {
+            if (!line.isEmpty()) {
+                try {
+                    builder.add(line);
+                } catch (IllegalArgumentException e) {
+                    throw new ProtocolException("Malformed header in batch part: " + line);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private static @Nullable Integer contentId(@Nullable String header) {
+        if (header == null) return null;
+        int end = header.length();
+        if (end > 0 && header.charAt(end - 1) == '>') end--;
+        int start = end;
+        while (start > 0 && Character.isDigit(header.charAt(start - 1))) start--;
+        if (start == end) return null;
+        try {
+            return Integer.parseInt(header.substring(start, end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
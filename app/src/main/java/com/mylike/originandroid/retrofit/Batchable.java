@@ -0,0 +1,18 @@
+package com.mylike.originandroid.retrofit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Allows {@link BatchingCallAdapterFactory} to send calls of this {@code GET} method together with
+ * other batchable calls in a single multipart batch request.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Batchable {
+}
@@ -0,0 +1,363 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.ResponseBody;
+
+/**
+ * A {@linkplain CallAdapter.Factory call adapter factory} which sends enqueued calls of
+ * {@link Batchable @Batchable} {@code GET} methods together in one {@code multipart/mixed} batch
+ * request to {@code batchUrl}, see {@link BatchCodec} for the wire format. Calls are collected
+ * until {@code windowMillis} passed since the first one or {@code maxBatchSize} calls are waiting,
+ * whichever comes first. The batch response is split back and every caller's {@link Callback}
+ * receives its own converted response.
+ * <p>
+ * A window holding a single call sends it as a regular request. Synchronous
+ * {@link Call#execute()} is never batched. Canceling a call that is still waiting removes it from
+ * the batch; once the batch is sent the call is only reported as canceled.
+ * <p>
+ * A {@linkplain Retrofit.Builder#callMetricsListener call metrics listener} sees the parsing and
+ * request building of a batched call, but not its network time, conversion or end: those happen
+ * for the batch as a whole, outside of the call.
+ * <p>
+ * One factory may be shared by several {@link Retrofit} instances: calls are only batched with
+ * calls of the same {@linkplain Retrofit#callFactory() call factory}, and each batch is sent
+ * through it.
+ * <p>
+ * Install it before other factories; it delegates to the next factory able to adapt the return
+ * type, so callbacks are still delivered on the callback executor.
+ */
+public final class BatchingCallAdapterFactory extends CallAdapter.Factory
+        implements HandlesRawTypes {
+    public static BatchingCallAdapterFactory create(HttpUrl batchUrl, long windowMillis,
+                                                    int maxBatchSize) {
+        if (batchUrl == null) throw new NullPointerException("batchUrl == null");
+        if (windowMillis < 0) throw new IllegalArgumentException("windowMillis < 0");
+        if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize < 1");
+        return new BatchingCallAdapterFactory(batchUrl, windowMillis, maxBatchSize);
+    }
+
+    private final HttpUrl batchUrl;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Retrofit Batcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Guarded by this. The current window of each call factory.
+    private final Map<okhttp3.Call.Factory, List<PendingCall<?>>> windows =
+            new IdentityHashMap<>();
+
+    private BatchingCallAdapterFactory(HttpUrl batchUrl, long windowMillis, int maxBatchSize) {
+        this.batchUrl = batchUrl;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override public Set<Class<?>> handledRawTypes() {
+        return Collections.<Class<?>>singleton(Call.class);
+    }
+
+    @Override public @Nullable CallAdapter<?, ?> get(Type returnType, Annotation[] annotations,
+                                                      Retrofit retrofit) {
+        if (getRawType(returnType) != Call.class || !isBatchable(annotations)) {
+            return null;
+        }
+        final okhttp3.Call.Factory callFactory = retrofit.callFactory();
+        //noinspection unchecked
+        final CallAdapter<Object, Object> delegate =
+                (CallAdapter<Object, Object>) retrofit.nextCallAdapter(this, returnType, annotations);
+        // 批量响应拆开后需要自己转换，所以在这里拿到和 OkHttpCall 相同的 Converter
+        final Converter<ResponseBody, Object> converter =
+                retrofit.responseBodyConverter(delegate.responseType(), annotations);
+        return new CallAdapter<Object, Object>() {
+            @Override public Type responseType() {
+                return delegate.responseType();
+            }
+
+            @Override public Object adapt(Call<Object> call) {
+                return delegate.adapt(new BatchingCall<>(call, converter, callFactory));
+            }
+        };
+    }
+
+    private static boolean isBatchable(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Batchable) return true;
+        }
+        return false;
+    }
+
+    void add(PendingCall<?> pending) {
+        final okhttp3.Call.Factory callFactory = pending.callFactory;
+        List<PendingCall<?>> full = null;
+        List<PendingCall<?>> opened = null;
+        synchronized (this) {
+            List<PendingCall<?>> window = windows.get(callFactory);
+            if (window == null) {
+                window = opened = new ArrayList<>();
+                windows.put(callFactory, window);
+            }
+            window.add(pending);
+            if (window.size() >= maxBatchSize) {
+                full = windows.remove(callFactory);
+            }
+        }
+        if (full != null) {
+            send(callFactory, full);
+        } else if (opened != null) {
+            final List<PendingCall<?>> window = opened;
+            scheduler.schedule(new Runnable() {
+                @Override public void run() {
+                    flush(callFactory, window);
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized boolean remove(PendingCall<?> pending) {
+        List<PendingCall<?>> window = windows.get(pending.callFactory);
+        return window != null && window.remove(pending);
+    }
+
+    /** Sends whatever is waiting in the current windows. */
+    public void flush() {
+        List<okhttp3.Call.Factory> callFactories;
+        synchronized (this) {
+            callFactories = new ArrayList<>(windows.keySet());
+        }
+        for (okhttp3.Call.Factory callFactory : callFactories) {
+            flush(callFactory, null);
+        }
+    }
+
+    /** Sends the window of {@code callFactory}, if it is still {@code window} (or any if null). */
+    private void flush(okhttp3.Call.Factory callFactory, @Nullable List<PendingCall<?>> window) {
+        List<PendingCall<?>> calls;
+        synchronized (this) {
+            calls = windows.get(callFactory);
+            // 窗口已经满员发出时，定时器不能把下一个窗口提前发出去
+            if (calls == null || window != null && calls != window) return;
+            windows.remove(callFactory);
+        }
+        if (!calls.isEmpty()) {
+            send(callFactory, calls);
+        }
+    }
+
+    private void send(okhttp3.Call.Factory callFactory, final List<PendingCall<?>> calls) {
+        if (calls.size() == 1) {
+            calls.get(0).sendAlone();
+            return;
+        }
+        final List<okhttp3.Request> requests = new ArrayList<>(calls.size());
+        for (PendingCall<?> call : calls) {
+            requests.add(call.request);
+        }
+        okhttp3.Request batch;
+        try {
+            batch = new okhttp3.Request.Builder()
+                    .url(batchUrl)
+                    .post(BatchCodec.encode(requests))
+                    .build();
+        } catch (IOException e) {
+            failAll(calls, e);
+            return;
+        }
+        callFactory.newCall(batch).enqueue(new okhttp3.Callback() {
+            @Override public void onResponse(okhttp3.Call call, okhttp3.Response rawResponse) {
+                List<okhttp3.Response> responses;
+                try {
+                    if (!rawResponse.isSuccessful()) {
+                        throw new IOException("Batch request failed: " + rawResponse.code() + " "
+                                + rawResponse.message());
+                    }
+                    responses = BatchCodec.decode(rawResponse, requests);
+                } catch (IOException | RuntimeException e) {
+                    // Every caller must hear back, whatever went wrong with the batch.
+                    failAll(calls, e);
+                    return;
+                } finally {
+                    rawResponse.close();
+                }
+                for (int i = 0, size = calls.size(); i < size; i++) {
+                    okhttp3.Response response = responses.get(i);
+                    if (response != null) {
+                        calls.get(i).deliver(response);
+                    } else {
+                        calls.get(i).fail(new IOException("Missing response in batch"));
+                    }
+                }
+            }
+
+            @Override public void onFailure(okhttp3.Call call, IOException e) {
+                failAll(calls, e);
+            }
+        });
+    }
+
+    private static void failAll(List<PendingCall<?>> calls, Throwable t) {
+        for (PendingCall<?> call : calls) {
+            call.fail(t);
+        }
+    }
+
+    /** A batchable call waiting for its window to be sent. */
+    static final class PendingCall<T> {
+        final BatchingCall<T> owner;
+        final okhttp3.Request request;
+        final Callback<T> callback;
+        final okhttp3.Call.Factory callFactory;
+
+        PendingCall(BatchingCall<T> owner, okhttp3.Request request, Callback<T> callback) {
+            this.owner = owner;
+            this.request = request;
+            this.callback = callback;
+            this.callFactory = owner.callFactory;
+        }
+
+        void sendAlone() {
+            owner.delegate.enqueue(
+                    new SingleFlightCallAdapterFactory.ForwardingCallback<>(owner, callback));
+        }
+
+        void deliver(okhttp3.Response rawResponse) {
+            if (owner.isCanceled()) {
+                fail(new IOException("Canceled"));
+                return;
+            }
+            Response<T> response;
+            try {
+                response = owner.parseResponse(rawResponse);
+            } catch (Throwable t) {
+                fail(t);
+                return;
+            }
+            try {
+                callback.onResponse(owner, response);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+
+        void fail(Throwable t) {
+            try {
+                callback.onFailure(owner, owner.isCanceled() ? new IOException("Canceled") : t);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    final class BatchingCall<T> implements Call<T> {
+        final Call<T> delegate;
+        private final Converter<ResponseBody, T> converter;
+        final okhttp3.Call.Factory callFactory;
+        private volatile @Nullable PendingCall<T> pending;
+        private volatile boolean executed;
+        private volatile boolean canceled;
+
+        BatchingCall(Call<T> delegate, Converter<ResponseBody, T> converter,
+                     okhttp3.Call.Factory callFactory) {
+            this.delegate = delegate;
+            this.converter = converter;
+            this.callFactory = callFactory;
+        }
+
+        @Override public void enqueue(Callback<T> callback) {
+            Utils.checkNotNull(callback, "callback == null");
+            synchronized (this) {
+                if (executed) throw new IllegalStateException("Already executed.");
+                executed = true;
+            }
+            okhttp3.Request request;
+            try {
+                request = delegate.request();
+            } catch (RuntimeException e) {
+                callback.onFailure(this, e);
+                return;
+            }
+            PendingCall<T> pending = new PendingCall<>(this, request, callback);
+            if (!"GET".equals(request.method())) {
+                pending.sendAlone();
+                return;
+            }
+            this.pending = pending;
+            add(pending);
+        }
+
+        /** Mirrors {@code OkHttpCall.parseResponse} for a response split out of a batch. */
+        Response<T> parseResponse(okhttp3.Response rawResponse) throws IOException {
+            ResponseBody rawBody = rawResponse.body();
+            rawResponse = rawResponse.newBuilder()
+                    .body(new OkHttpCall.NoContentResponseBody(rawBody.contentType(),
+                            rawBody.contentLength()))
+                    .build();
+
+            int code = rawResponse.code();
+            if (code < 200 || code >= 300) {
+                // Already in memory, nothing to buffer.
+                return Response.error(rawBody, rawResponse);
+            }
+            if (code == 204 || code == 205) {
+                rawBody.close();
+                return Response.success(null, rawResponse);
+            }
+            return Response.success(converter.convert(rawBody), rawResponse);
+        }
+
+        @Override public Response<T> execute() throws IOException {
+            synchronized (this) {
+                if (executed) throw new IllegalStateException("Already executed.");
+                executed = true;
+            }
+            return delegate.execute();
+        }
+
+        @Override public boolean isExecuted() {
+            return executed;
+        }
+
+        @Override public void cancel() {
+            canceled = true;
+            PendingCall<T> pending = this.pending;
+            if (pending != null && remove(pending)) {
+                pending.fail(new IOException("Canceled"));
+            }
+            delegate.cancel();
+        }
+
+        @Override public boolean isCanceled() {
+            return canceled;
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone") // Performing deep clone.
+        @Override public Call<T> clone() {
+            return new BatchingCall<>(delegate.clone(), converter, callFactory);
+        }
+
+        @Override public Request request() {
+            return delegate.request();
+        }
+    }
+}
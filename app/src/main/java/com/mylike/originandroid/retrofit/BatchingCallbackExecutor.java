@@ -0,0 +1,85 @@
+package com.mylike.originandroid.retrofit;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An executor which gathers callbacks and hands them to {@code delegate} in batches. While a batch
+ * is scheduled on the delegate, newly submitted callbacks join it instead of costing another
+ * {@link Executor#execute} each. Callbacks run one after another in submission order.
+ * <p>
+ * Use it with {@link Retrofit.Builder#callbackExecutor} or let
+ * {@link Retrofit.Builder#batchCallbacks} wrap the platform's callback executor.
+ */
+public class BatchingCallbackExecutor implements Executor {
+    /** Callbacks run by one batch before the rest is handed back to the delegate. */
+    static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    final Executor delegate;
+    private final int maxBatchSize;
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong callbackCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final Runnable drain = new Runnable() {
+        @Override public void run() {
+            int ran = 0;
+            try {
+                Runnable task;
+                while (ran < maxBatchSize && (task = pending.poll()) != null) {
+                    ran++;
+                    task.run();
+                }
+            } finally {
+                // A callback may have thrown; whatever is left still gets its own batch.
+                scheduled.set(false);
+                if (!pending.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    };
+
+    public BatchingCallbackExecutor(Executor delegate) {
+        this(delegate, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public BatchingCallbackExecutor(Executor delegate, int maxBatchSize) {
+        if (delegate == null) throw new NullPointerException("delegate == null");
+        if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize < 1");
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override public void execute(Runnable command) {
+        if (command == null) throw new NullPointerException("command == null");
+        pending.add(command);
+        callbackCount.incrementAndGet();
+        schedule();
+    }
+
+    void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            batchCount.incrementAndGet();
+            delegate.execute(drain);
+        }
+    }
+
+    /** Callbacks submitted to this executor. */
+    public long callbackCount() {
+        return callbackCount.get();
+    }
+
+    /** Batches handed to the delegate. */
+    public long batchCount() {
+        return batchCount.get();
+    }
+
+    /** Delegate executions avoided by batching, {@code callbackCount() - batchCount()}. */
+    public long savedCount() {
+        return Math.max(0, callbackCount.get() - batchCount.get());
+    }
+}
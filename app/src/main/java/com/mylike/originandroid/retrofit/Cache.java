@@ -0,0 +1,37 @@
+package com.mylike.originandroid.retrofit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Serve successful responses of this method from the {@link ResponseCache} installed with
+ * {@link Retrofit.Builder#responseCache}. Cached responses are already converted, so a hit skips
+ * both the network and the response body converter.
+ * <pre><code>
+ * &#64;Cache(maxAge = 60, staleWhileRevalidate = 600)
+ * &#64;GET("users/{id}")
+ * Call&lt;User&gt; user(@Path("id") long id);
+ * </code></pre>
+ * Within {@code maxAge} a cached response is returned as is. Within the following
+ * {@code staleWhileRevalidate} seconds it is still returned right away while a conditional request
+ * ({@code If-None-Match} / {@code If-Modified-Since}) refreshes it in the background.
+ * <p>
+ * Every hit returns the same converted instance, so response types should be immutable.
+ * <p>
+ * The cache key is made of the URL and headers of a request, so only {@code GET} and {@code HEAD}
+ * methods may be annotated.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Cache {
+    /** Seconds a cached response is served without contacting the server. */
+    long maxAge();
+
+    /** Seconds past {@link #maxAge} a stale response may be served while it is revalidated. */
+    long staleWhileRevalidate() default 0;
+}
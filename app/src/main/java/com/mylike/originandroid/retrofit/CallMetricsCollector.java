@@ -0,0 +1,146 @@
+package com.mylike.originandroid.retrofit;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * A {@link CallMetricsListener} which aggregates events per service method into lock-free
+ * {@linkplain ConcurrentHistogram histograms}. Recording never blocks; {@link #snapshot()} is cheap
+ * enough to poll periodically.
+ * <pre><code>
+ * CallMetricsCollector metrics = new CallMetricsCollector();
+ * Retrofit retrofit = new Retrofit.Builder()
+ *     .baseUrl("https://api.example.com/")
+ *     .callMetricsListener(metrics)
+ *     .build();
+ * ...
+ * for (Map.Entry&lt;Method, CallMetricsCollector.EndpointSnapshot&gt; e : metrics.snapshot().entrySet()) {
+ *   Log.d("Metrics", e.getKey().getName() + " " + e.getValue());
+ * }
+ * </code></pre>
+ */
+public final class CallMetricsCollector extends CallMetricsListener {
+    private final ConcurrentHashMap<Method, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private Endpoint endpoint(Method method) {
+        Endpoint endpoint = endpoints.get(method);
+        if (endpoint == null) {
+            Endpoint newEndpoint = new Endpoint();
+            endpoint = endpoints.putIfAbsent(method, newEndpoint);
+            if (endpoint == null) {
+                endpoint = newEndpoint;
+            }
+        }
+        return endpoint;
+    }
+
+    @Override public void serviceMethodParsed(Method method, long tookNanos) {
+        endpoint(method).parse.record(tookNanos);
+    }
+
+    @Override public void requestBuilt(Method method, long tookNanos) {
+        endpoint(method).build.record(tookNanos);
+    }
+
+    @Override public void responseReceived(Method method, long networkNanos, int code) {
+        endpoint(method).network.record(networkNanos);
+    }
+
+    @Override public void responseConverted(Method method, long tookNanos) {
+        endpoint(method).conversion.record(tookNanos);
+    }
+
+    @Override public void callEnded(Method method, Outcome outcome, long responseBytes) {
+        Endpoint endpoint = endpoint(method);
+        endpoint.outcomes.incrementAndGet(outcome.ordinal());
+        if (outcome != Outcome.FAILURE) {
+            endpoint.responseBytes.record(responseBytes);
+        }
+    }
+
+    /** Returns the metrics of every service method called so far. */
+    public Map<Method, EndpointSnapshot> snapshot() {
+        Map<Method, EndpointSnapshot> result = new LinkedHashMap<>();
+        for (Map.Entry<Method, Endpoint> entry : endpoints.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return unmodifiableMap(result);
+    }
+
+    /** Forgets every endpoint. */
+    public void reset() {
+        endpoints.clear();
+    }
+
+    static final class Endpoint {
+        final ConcurrentHistogram parse = new ConcurrentHistogram();
+        final ConcurrentHistogram build = new ConcurrentHistogram();
+        final ConcurrentHistogram network = new ConcurrentHistogram();
+        final ConcurrentHistogram conversion = new ConcurrentHistogram();
+        final ConcurrentHistogram responseBytes = new ConcurrentHistogram();
+        final AtomicLongArray outcomes = new AtomicLongArray(Outcome.values().length);
+
+        EndpointSnapshot snapshot() {
+            return new EndpointSnapshot(parse.snapshot(), build.snapshot(), network.snapshot(),
+                    conversion.snapshot(), responseBytes.snapshot(),
+                    outcomes.get(Outcome.SUCCESS.ordinal()),
+                    outcomes.get(Outcome.HTTP_ERROR.ordinal()),
+                    outcomes.get(Outcome.FAILURE.ordinal()),
+                    outcomes.get(Outcome.CACHED.ordinal()));
+        }
+    }
+
+    /** The metrics of one endpoint. Durations are in nanoseconds. */
+    public static final class EndpointSnapshot {
+        public final ConcurrentHistogram.Snapshot parseNanos;
+        public final ConcurrentHistogram.Snapshot requestBuildNanos;
+        public final ConcurrentHistogram.Snapshot networkNanos;
+        public final ConcurrentHistogram.Snapshot conversionNanos;
+        public final ConcurrentHistogram.Snapshot responseBytes;
+        public final long successCount;
+        public final long httpErrorCount;
+        public final long failureCount;
+        /** Calls answered from the {@link Cache @Cache} response cache. */
+        public final long cachedCount;
+
+        EndpointSnapshot(ConcurrentHistogram.Snapshot parseNanos,
+                         ConcurrentHistogram.Snapshot requestBuildNanos,
+                         ConcurrentHistogram.Snapshot networkNanos,
+                         ConcurrentHistogram.Snapshot conversionNanos,
+                         ConcurrentHistogram.Snapshot responseBytes,
+                         long successCount, long httpErrorCount, long failureCount,
+                         long cachedCount) {
+            this.parseNanos = parseNanos;
+            this.requestBuildNanos = requestBuildNanos;
+            this.networkNanos = networkNanos;
+            this.conversionNanos = conversionNanos;
+            this.responseBytes = responseBytes;
+            this.successCount = successCount;
+            this.httpErrorCount = httpErrorCount;
+            this.failureCount = failureCount;
+            this.cachedCount = cachedCount;
+        }
+
+        public long calls() {
+            return successCount + httpErrorCount + failureCount + cachedCount;
+        }
+
+        @Override public String toString() {
+            return "calls=" + calls()
+                    + " success=" + successCount
+                    + " httpError=" + httpErrorCount
+                    + " failure=" + failureCount
+                    + " cached=" + cachedCount
+                    + "\n  network: " + networkNanos
+                    + "\n  conversion: " + conversionNanos
+                    + "\n  requestBuild: " + requestBuildNanos
+                    + "\n  parse: " + parseNanos
+                    + "\n  responseBytes: " + responseBytes;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mylike.originandroid.retrofit;
+
+import java.lang.reflect.Method;
+
+/**
+ * Listener for timing and size events of service method calls. Install one with
+ * {@link Retrofit.Builder#callMetricsListener}; {@link CallMetricsCollector} aggregates the events
+ * into per-endpoint histograms.
+ * <p>
+ * Methods are invoked synchronously on whatever thread the event happened on, usually an I/O
+ * thread, and must return quickly. Durations are in nanoseconds. Without a listener none of these
+ * timings are taken.
+ * <p>
+ * Calls that {@link BatchingCallAdapterFactory} sends inside a batch request only report
+ * {@link #serviceMethodParsed} and {@link #requestBuilt}: the batch is sent and split outside of
+ * the call, so there is no per-call network time, conversion time or {@link #callEnded}. A call
+ * sent on its own because it was alone in its window reports every event.
+ */
+public abstract class CallMetricsListener {
+    /** How a call ended. */
+    public enum Outcome {
+        /** A 2xx response whose body, if any, was converted. */
+        SUCCESS,
+        /** A response outside of 2xx. */
+        HTTP_ERROR,
+        /** An I/O error, a cancellation or a failed conversion. */
+        FAILURE,
+        /** A response served from the {@link Cache @Cache} response cache, without a request. */
+        CACHED
+    }
+
+    /** {@code method}'s annotations were parsed into a service method. */
+    public void serviceMethodParsed(Method method, long tookNanos) {
+    }
+
+    /** The HTTP request for a call to {@code method} was built from its arguments. */
+    public void requestBuilt(Method method, long tookNanos) {
+    }
+
+    /**
+     * The response headers for a call to {@code method} arrived {@code networkNanos} after the
+     * request was handed to the call factory.
+     */
+    public void responseReceived(Method method, long networkNanos, int code) {
+    }
+
+    /** The response body of a call to {@code method} was converted. */
+    public void responseConverted(Method method, long tookNanos) {
+    }
+
+    /**
+     * A call to {@code method} ended. {@code responseBytes} is the number of body bytes read up to
+     * this point, or 0 if there was no response.
+     */
+    public void callEnded(Method method, Outcome outcome, long responseBytes) {
+    }
+}
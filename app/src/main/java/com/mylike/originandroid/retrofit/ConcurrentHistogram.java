@@ -0,0 +1,134 @@
+package com.mylike.originandroid.retrofit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative {@code long} values with HDR-style log-linear buckets:
+ * every power of two is split into {@value #SUB_BUCKET_COUNT} equal buckets, so a recorded value is
+ * known to within 12.5% regardless of its magnitude. Recording is a few atomic increments and never
+ * allocates.
+ * <p>
+ * The total count and sum are striped over several cells since every record touches them, while
+ * bucket increments are naturally spread over different slots.
+ */
+public final class ConcurrentHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** Enough buckets for every non-negative long. */
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+    private static final int STRIPES = 4;
+    /** Cells are spaced out so that two stripes do not share a cache line. */
+    private static final int STRIPE_SPACING = 8;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * STRIPE_SPACING);
+    private final AtomicLongArray sums = new AtomicLongArray(STRIPES * STRIPE_SPACING);
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(bucketIndex(value));
+        int stripe = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_SPACING;
+        counts.incrementAndGet(stripe);
+        sums.addAndGet(stripe, value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) break;
+        }
+    }
+
+    /** Returns a consistent-enough copy of this histogram. Concurrent records may be missed. */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = buckets.get(i);
+        }
+        long count = 0;
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            count += counts.get(i * STRIPE_SPACING);
+            sum += sums.get(i * STRIPE_SPACING);
+        }
+        return new Snapshot(copy, count, sum, max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /** The smallest value that falls into bucket {@code index}. */
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + subBucket) << shift;
+    }
+
+    /** An immutable view of a {@link ConcurrentHistogram} at one point in time. */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long sum() {
+            return sum;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns the lower bound of the bucket holding the value at {@code percentile}, in
+         * {@code [0, 100]}, or 0 if nothing was recorded.
+         */
+        public long valueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile out of range: " + percentile);
+            }
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketLowerBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override public String toString() {
+            return "count=" + count
+                    + " mean=" + (long) mean()
+                    + " p50=" + valueAtPercentile(50)
+                    + " p95=" + valueAtPercentile(95)
+                    + " p99=" + valueAtPercentile(99)
+                    + " max=" + max;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * The elements of a response body, decoded incrementally by a {@link StreamingConverter} while the
+ * body is read. The stream owns the response body and must be {@linkplain #close closed}, which
+ * {@link #forEach} does once the last element was delivered.
+ * <pre><code>
+ * &#64;GET("items")
+ * Call&lt;ElementStream&lt;Item&gt;&gt; items();
+ * </code></pre>
+ */
+public final class ElementStream<E> implements Closeable {
+    /** Receives the elements of a stream as they are decoded. */
+    public interface Callback<E> {
+        void onElement(E element) throws IOException;
+    }
+
+    private final ResponseBody body;
+    private final BufferedSource source;
+    private final StreamingConverter<E> converter;
+    private boolean exhausted;
+
+    ElementStream(ResponseBody body, StreamingConverter<E> converter) {
+        this.body = body;
+        this.source = body.source();
+        this.converter = converter;
+    }
+
+    /** Returns the next element, or null once the body is exhausted. */
+    public @Nullable E read() throws IOException {
+        if (exhausted) return null;
+        E element = converter.read(source);
+        if (element == null) {
+            exhausted = true;
+        }
+        return element;
+    }
+
+    /** Delivers every remaining element to {@code callback}, then closes the stream. */
+    public void forEach(Callback<E> callback) throws IOException {
+        try {
+            for (E element; (element = read()) != null; ) {
+                callback.onElement(element);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    @Override public void close() {
+        body.close();
+    }
+}
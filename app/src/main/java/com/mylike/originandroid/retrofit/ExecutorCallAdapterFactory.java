@@ -6,15 +6,21 @@ import androidx.annotation.Nullable;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.Executor;
 
-final class ExecutorCallAdapterFactory extends CallAdapter.Factory {
+final class ExecutorCallAdapterFactory extends CallAdapter.Factory implements HandlesRawTypes {
     final Executor callbackExecutor;
 
     ExecutorCallAdapterFactory(Executor callbackExecutor) {
         this.callbackExecutor = callbackExecutor;
     }
 
+    @Override public Set<Class<?>> handledRawTypes() {
+        return Collections.<Class<?>>singleton(Call.class);
+    }
+
     @Nullable
     public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
         if (getRawType(returnType) != Call.class) {
@@ -0,0 +1,29 @@
+package com.mylike.originandroid.retrofit;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Speeds up the ordered scan over one list of factories without changing its result: factories
+ * implementing {@link HandlesRawTypes} are skipped for raw types they do not handle.
+ */
+final class FactoryIndex {
+    /** Per factory, the raw types it handles, or null if it may handle any type. */
+    private final Set<Class<?>>[] handledRawTypes;
+
+    @SuppressWarnings("unchecked") // Generic array creation.
+    FactoryIndex(List<?> factories) {
+        handledRawTypes = new Set[factories.size()];
+        for (int i = 0, size = factories.size(); i < size; i++) {
+            Object factory = factories.get(i);
+            if (factory instanceof HandlesRawTypes) {
+                handledRawTypes[i] = ((HandlesRawTypes) factory).handledRawTypes();
+            }
+        }
+    }
+
+    boolean mayHandle(int index, Class<?> rawType) {
+        Set<Class<?>> rawTypes = handledRawTypes[index];
+        return rawTypes == null || rawTypes.contains(rawType);
+    }
+}
@@ -0,0 +1,65 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Request metadata for one service method, precomputed at compile time by the
+ * {@code retrofit-compiler} annotation processor. It carries what {@link RequestFactory.Builder}
+ * would otherwise read through {@code getAnnotations()}, {@code getParameterAnnotations()} and
+ * {@code getGenericParameterTypes()} on first use of the endpoint.
+ * <p>
+ * Only the simple shapes the processor can fully validate are described here: an HTTP method with
+ * a relative URL and {@link Param parameters} that are {@code @Path}, {@code @Query},
+ * {@code @Header} or {@code @Body}. Anything else is left to the reflective path.
+ */
+public final class GeneratedRequestSpec {
+    final String httpMethod;
+    final @Nullable String relativeUrl;
+    final boolean hasBody;
+    final Param[] params;
+
+    public GeneratedRequestSpec(String httpMethod, @Nullable String relativeUrl, boolean hasBody,
+                                Param... params) {
+        this.httpMethod = httpMethod;
+        this.relativeUrl = relativeUrl;
+        this.hasBody = hasBody;
+        this.params = params;
+    }
+
+    public static Param path(String name, boolean encoded, Class<?> type) {
+        return new Param(Param.PATH, name, encoded, type);
+    }
+
+    public static Param query(String name, boolean encoded, Class<?> type) {
+        return new Param(Param.QUERY, name, encoded, type);
+    }
+
+    public static Param header(String name, Class<?> type) {
+        return new Param(Param.HEADER, name, false, type);
+    }
+
+    public static Param body(Class<?> type) {
+        return new Param(Param.BODY, null, false, type);
+    }
+
+    /** One method parameter and the Retrofit annotation it carries. */
+    public static final class Param {
+        static final int PATH = 1;
+        static final int QUERY = 2;
+        static final int HEADER = 3;
+        static final int BODY = 4;
+
+        final int kind;
+        final @Nullable String name;
+        final boolean encoded;
+        /** The boxed parameter type. */
+        final Class<?> type;
+
+        Param(int kind, @Nullable String name, boolean encoded, Class<?> type) {
+            this.kind = kind;
+            this.name = name;
+            this.encoded = encoded;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Method;
+
+/**
+ * Implemented by the {@code <Service>_RetrofitBinding} classes that the {@code retrofit-compiler}
+ * annotation processor generates next to each service interface. {@link Retrofit} picks the
+ * binding up by name when {@link Retrofit.Builder#useGeneratedRequestFactories} is enabled.
+ */
+public interface GeneratedServiceBinding {
+    /** Suffix appended to the binary name of the service interface to name its binding. */
+    String SUFFIX = "_RetrofitBinding";
+
+    /**
+     * Returns the precomputed request metadata for {@code method}, or null if the method must be
+     * parsed reflectively.
+     */
+    @Nullable GeneratedRequestSpec requestSpec(Method method);
+}
@@ -0,0 +1,17 @@
+package com.mylike.originandroid.retrofit;
+
+import java.util.Set;
+
+/**
+ * Implemented by a {@link CallAdapter.Factory} or a {@code Converter.Factory} to tell
+ * {@link Retrofit} which raw types it can handle, so that lookups for other types skip it without
+ * calling it.
+ * <p>
+ * For a call adapter factory the set covers the raw return types accepted by
+ * {@link CallAdapter.Factory#get get}; for a converter factory it covers the raw types accepted by
+ * {@code responseBodyConverter}. The factory must return null for every other raw type.
+ */
+public interface HandlesRawTypes {
+    /** The raw types this factory may handle. Never empty. */
+    Set<Class<?>> handledRawTypes();
+}
@@ -4,9 +4,12 @@ package com.mylike.originandroid.retrofit;
  * Created by ydh on 2021/6/30
  */
 
+import androidx.annotation.Nullable;
+
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.concurrent.Executor;
 
 import okhttp3.Response;
 import okhttp3.ResponseBody;
@@ -35,7 +38,23 @@ final class HttpServiceMethod<ResponseT, ReturnT> extends ServiceMethod<ReturnT>
                 createResponseConverter(retrofit, method, responseType);
 
         okhttp3.Call.Factory callFactory = retrofit.callFactory;
-        return new HttpServiceMethod<>(requestFactory, callFactory, callAdapter, responseConverter);
+        //有@Cache注解并且设置了ResponseCache时，OkHttpCall会先查缓存
+        Cache cache = method.getAnnotation(Cache.class);
+        if (cache != null && !requestFactory.httpMethod.equals("GET")
+                && !requestFactory.httpMethod.equals("HEAD")) {
+            // The cache key has no request body, so two different bodies would share a response.
+            throw methodError(method, "@Cache can only be specified on GET or HEAD methods.");
+        }
+        ResponseCache.Policy cachePolicy = cache != null && retrofit.responseCache != null
+                ? new ResponseCache.Policy(retrofit.responseCache, method.toString(), cache)
+                : null;
+        Priority priorityAnnotation = method.getAnnotation(Priority.class);
+        Priority.Level priority = priorityAnnotation != null
+                ? priorityAnnotation.value()
+                : Priority.Level.NORMAL;
+        return new HttpServiceMethod<>(requestFactory, callFactory, callAdapter, responseConverter,
+                cachePolicy, retrofit.maxErrorBodyBytes, retrofit.dispatchExecutor,
+                retrofit.metricsListener, retrofit.requestScheduler, priority);
     }
 
     private static <ResponseT, ReturnT> CallAdapter<ResponseT, ReturnT> createCallAdapter(
@@ -64,18 +83,37 @@ final class HttpServiceMethod<ResponseT, ReturnT> extends ServiceMethod<ReturnT>
     private final okhttp3.Call.Factory callFactory;
     private final CallAdapter<ResponseT, ReturnT> callAdapter;
     private final Converter<ResponseBody, ResponseT> responseConverter;
+    private final @Nullable ResponseCache.Policy cachePolicy;
+    private final long maxErrorBodyBytes;
+    private final @Nullable Executor dispatchExecutor;
+    private final @Nullable CallMetricsListener metricsListener;
+    private final @Nullable RequestScheduler requestScheduler;
+    private final Priority.Level priority;
 
     private HttpServiceMethod(RequestFactory requestFactory, okhttp3.Call.Factory callFactory,
                               CallAdapter<ResponseT, ReturnT> callAdapter,
-                              Converter<ResponseBody, ResponseT> responseConverter) {
+                              Converter<ResponseBody, ResponseT> responseConverter,
+                              @Nullable ResponseCache.Policy cachePolicy, long maxErrorBodyBytes,
+                              @Nullable Executor dispatchExecutor,
+                              @Nullable CallMetricsListener metricsListener,
+                              @Nullable RequestScheduler requestScheduler,
+                              Priority.Level priority) {
         this.requestFactory = requestFactory;
         this.callFactory = callFactory;
         this.callAdapter = callAdapter;
         this.responseConverter = responseConverter;
+        this.cachePolicy = cachePolicy;
+        this.maxErrorBodyBytes = maxErrorBodyBytes;
+        this.dispatchExecutor = dispatchExecutor;
+        this.metricsListener = metricsListener;
+        this.requestScheduler = requestScheduler;
+        this.priority = priority;
     }
 
     @Override ReturnT invoke(Object[] args) {
         return callAdapter.adapt(
-                new OkHttpCall<>(requestFactory, args, callFactory, responseConverter));
+                new OkHttpCall<>(requestFactory, args, callFactory, responseConverter, cachePolicy,
+                        maxErrorBodyBytes, dispatchExecutor, metricsListener, requestScheduler,
+                        priority));
     }
 }
@@ -5,11 +5,15 @@ import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 
 import java.io.IOException;
-import java.nio.Buffer;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import okhttp3.MediaType;
+import okhttp3.Protocol;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.Buffer;
 import okio.BufferedSource;
 import okio.ForwardingSource;
 import okio.Okio;
@@ -19,6 +23,20 @@ final class OkHttpCall<T> implements Call<T> {
     private final Object[] args;
     private final okhttp3.Call.Factory callFactory;
     private final Converter<ResponseBody, T> responseConverter;
+    private final @Nullable ResponseCache.Policy cachePolicy;
+    private final long maxErrorBodyBytes;
+    private final @Nullable Executor dispatchExecutor;
+    private final @Nullable CallMetricsListener metricsListener;
+    private final @Nullable RequestScheduler scheduler;
+    private final Priority.Level priority;
+    /**
+     * Whether metrics are taken for this call. Set when the call starts, before it may wait in the
+     * scheduler, so that a call dropped there is still reported as ended.
+     */
+    private volatile boolean metricsStarted;
+    /** When the request was handed to the call factory. */
+    private volatile long networkStartNanos;
+    private volatile @Nullable RequestScheduler.Task scheduledTask;
 
     private volatile boolean canceled;
 
@@ -31,16 +49,27 @@ final class OkHttpCall<T> implements Call<T> {
     private boolean executed;
 
     OkHttpCall(RequestFactory requestFactory, Object[] args,
-               okhttp3.Call.Factory callFactory, Converter<ResponseBody, T> responseConverter) {
+               okhttp3.Call.Factory callFactory, Converter<ResponseBody, T> responseConverter,
+               @Nullable ResponseCache.Policy cachePolicy, long maxErrorBodyBytes,
+               @Nullable Executor dispatchExecutor,
+               @Nullable CallMetricsListener metricsListener,
+               @Nullable RequestScheduler scheduler, Priority.Level priority) {
         this.requestFactory = requestFactory;
         this.args = args;
         this.callFactory = callFactory;
         this.responseConverter = responseConverter;
+        this.cachePolicy = cachePolicy;
+        this.maxErrorBodyBytes = maxErrorBodyBytes;
+        this.dispatchExecutor = dispatchExecutor;
+        this.metricsListener = metricsListener;
+        this.scheduler = scheduler;
+        this.priority = priority;
     }
 
     @SuppressWarnings("CloneDoesntCallSuperClone") // We are a final type & this saves clearing state.
     @Override public OkHttpCall<T> clone() {
-        return new OkHttpCall<>(requestFactory, args, callFactory, responseConverter);
+        return new OkHttpCall<>(requestFactory, args, callFactory, responseConverter, cachePolicy,
+                maxErrorBodyBytes, dispatchExecutor, metricsListener, scheduler, priority);
     }
 
     @Override public synchronized Request request() {
@@ -92,19 +121,38 @@ final class OkHttpCall<T> implements Call<T> {
         }
 
         if (failure != null) {
+            recordCreationFailure();
             callback.onFailure(this, failure);
             return;
         }
 
+        // 命中 @Cache 缓存时直接回调，不发起网络请求
+        final String cacheKey;
+        if (cachePolicy != null && !canceled) {
+            cacheKey = cachePolicy.key(call.request());
+            Response<T> cached = cachedResponse(call.request(), cacheKey);
+            if (cached != null) {
+                recordCached(cached);
+                try {
+                    callback.onResponse(this, cached);
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+                return;
+            }
+        } else {
+            cacheKey = null;
+        }
+
         if (canceled) {
             call.cancel();
         }
 
-        call.enqueue(new okhttp3.Callback() {
+        okhttp3.Callback responseCallback = new okhttp3.Callback() {
             @Override public void onResponse(okhttp3.Call call, okhttp3.Response rawResponse) {
                 Response<T> response;
                 try {
-                    response = parseResponse(rawResponse);
+                    response = parseResponse(rawResponse, cacheKey);
                 } catch (Throwable e) {
                     throwIfFatal(e);
                     callFailure(e);
@@ -123,13 +171,109 @@ final class OkHttpCall<T> implements Call<T> {
             }
 
             private void callFailure(Throwable e) {
+                recordFailure();
                 try {
                     callback.onFailure(OkHttpCall.this, e);
                 } catch (Throwable t) {
                     t.printStackTrace();
                 }
             }
-        });
+        };
+        if (metricsListener != null) {
+            metricsStarted = true;
+        }
+        if (scheduler != null) {
+            schedule(call, scheduler, responseCallback);
+        } else {
+            send(call, responseCallback);
+        }
+    }
+
+    private void send(okhttp3.Call call, okhttp3.Callback responseCallback) {
+        if (metricsListener != null) {
+            networkStartNanos = System.nanoTime(); // Not counting the time spent in the scheduler.
+        }
+        if (dispatchExecutor != null) {
+            dispatchBlocking(call, dispatchExecutor, responseCallback);
+        } else {
+            call.enqueue(responseCallback);
+        }
+    }
+
+    /** Holds {@code call} in {@code scheduler} until it may be sent. */
+    private void schedule(final okhttp3.Call call, final RequestScheduler scheduler,
+                          final okhttp3.Callback responseCallback) {
+        okhttp3.Request request = call.request();
+        Priority.Level tagged = request.tag(Priority.Level.class);
+        RequestScheduler.Task task = new RequestScheduler.Task(request.url().host(),
+                tagged != null ? tagged : priority) {
+            @Override boolean isCanceled() {
+                return canceled;
+            }
+
+            @Override void start() {
+                final RequestScheduler.Task self = this;
+                send(call, new okhttp3.Callback() {
+                    @Override public void onResponse(okhttp3.Call call, okhttp3.Response response)
+                            throws IOException {
+                        try {
+                            responseCallback.onResponse(call, response);
+                        } finally {
+                            scheduler.finished(self);
+                        }
+                    }
+
+                    @Override public void onFailure(okhttp3.Call call, IOException e) {
+                        try {
+                            responseCallback.onFailure(call, e);
+                        } finally {
+                            scheduler.finished(self);
+                        }
+                    }
+                });
+            }
+
+            @Override void drop() {
+                responseCallback.onFailure(call, new IOException("Canceled"));
+            }
+        };
+        scheduledTask = task;
+        scheduler.enqueue(task);
+    }
+
+    /**
+     * Runs {@code call} synchronously on {@code executor} instead of OkHttp's dispatcher, which is
+     * cheap when the executor hands out virtual threads.
+     */
+    private static void dispatchBlocking(final okhttp3.Call call, Executor executor,
+                                         final okhttp3.Callback responseCallback) {
+        try {
+            executor.execute(new Runnable() {
+                @Override public void run() {
+                    okhttp3.Response rawResponse;
+                    try {
+                        rawResponse = call.execute();
+                    } catch (IOException e) {
+                        responseCallback.onFailure(call, e);
+                        return;
+                    } catch (Throwable t) {
+                        // Like OkHttp's own dispatcher: the callback must still hear about it.
+                        call.cancel();
+                        responseCallback.onFailure(call, new IOException("canceled due to " + t, t));
+                        throw t;
+                    }
+                    try {
+                        responseCallback.onResponse(call, rawResponse);
+                    } catch (IOException e) {
+                        responseCallback.onFailure(call, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            InterruptedIOException ioException = new InterruptedIOException("executor rejected");
+            ioException.initCause(e);
+            responseCallback.onFailure(call, ioException);
+        }
     }
 
     @Override public synchronized boolean isExecuted() {
@@ -138,42 +282,197 @@ final class OkHttpCall<T> implements Call<T> {
 
     @Override public Response<T> execute() throws IOException {
         okhttp3.Call call;
+        Throwable failure;
 
         synchronized (this) {
             if (executed) throw new IllegalStateException("Already executed.");
             executed = true;
 
-            if (creationFailure != null) {
-                if (creationFailure instanceof IOException) {
-                    throw (IOException) creationFailure;
-                } else if (creationFailure instanceof RuntimeException) {
-                    throw (RuntimeException) creationFailure;
-                } else {
-                    throw (Error) creationFailure;
-                }
-            }
-
             call = rawCall;
-            if (call == null) {
+            failure = creationFailure;
+            if (call == null && failure == null) {
                 try {
                     call = rawCall = createRawCall();
                 } catch (IOException | RuntimeException | Error e) {
                     throwIfFatal(e); //  Do not assign a fatal error to creationFailure.
-                    creationFailure = e;
-                    throw e;
+                    failure = creationFailure = e;
                 }
             }
         }
 
+        if (failure != null) {
+            recordCreationFailure();
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else {
+                throw (Error) failure;
+            }
+        }
+
+        String cacheKey = null;
+        if (cachePolicy != null && !canceled) {
+            cacheKey = cachePolicy.key(call.request());
+            Response<T> cached = cachedResponse(call.request(), cacheKey);
+            if (cached != null) {
+                recordCached(cached);
+                return cached;
+            }
+        }
+
         if (canceled) {
             call.cancel();
         }
 
-        return parseResponse(call.execute());
+        if (metricsListener == null) {
+            return parseResponse(call.execute(), cacheKey);
+        }
+        metricsStarted = true;
+        networkStartNanos = System.nanoTime();
+        try {
+            return parseResponse(call.execute(), cacheKey);
+        } catch (IOException | RuntimeException e) {
+            recordFailure();
+            throw e;
+        }
+    }
+
+    private void recordConverted(long conversionStart, long responseBytes) {
+        if (conversionStart != 0) {
+            metricsListener.responseConverted(requestFactory.method,
+                    System.nanoTime() - conversionStart);
+            metricsListener.callEnded(requestFactory.method, CallMetricsListener.Outcome.SUCCESS,
+                    responseBytes);
+        }
+    }
+
+    private void recordEnded(CallMetricsListener.Outcome outcome, long responseBytes) {
+        if (metricsStarted) {
+            metricsListener.callEnded(requestFactory.method, outcome, responseBytes);
+        }
+    }
+
+    private void recordFailure() {
+        recordEnded(CallMetricsListener.Outcome.FAILURE, 0);
+    }
+
+    /** The call was answered from the response cache, so it ended without starting. */
+    private void recordCached(Response<T> cached) {
+        if (metricsListener != null) {
+            metricsListener.callEnded(requestFactory.method, CallMetricsListener.Outcome.CACHED,
+                    cached.raw().body().contentLength());
+        }
+    }
+
+    /** The request could not be created, so the call ended before it started. */
+    private void recordCreationFailure() {
+        if (metricsListener != null) {
+            metricsListener.callEnded(requestFactory.method, CallMetricsListener.Outcome.FAILURE, 0);
+        }
+    }
+
+    /**
+     * Returns the cached response for {@code request} if it is fresh, or stale but still within
+     * {@link Cache#staleWhileRevalidate} in which case it is revalidated in the background.
+     * Returns null on a miss.
+     */
+    private @Nullable Response<T> cachedResponse(okhttp3.Request request, String cacheKey) {
+        ResponseCache cache = cachePolicy.cache;
+        ResponseCache.Entry entry = cache.get(cacheKey);
+        long now = System.currentTimeMillis();
+        long age = entry != null ? now - entry.storedAtMillis : 0;
+        if (entry == null
+                || age >= cachePolicy.maxAgeMillis + cachePolicy.staleWhileRevalidateMillis) {
+            cache.recordMiss();
+            return null;
+        }
+
+        boolean fromDisk = entry.spilled;
+        if (fromDisk) {
+            // Spilled entries only kept the serialized body, convert it again.
+            T body;
+            try {
+                body = responseConverter.convert(ResponseBody.create(entry.contentType, entry.body));
+            } catch (IOException | RuntimeException e) {
+                cache.recordMiss();
+                return null;
+            }
+            entry = new ResponseCache.Entry(body, entry.body, entry.contentType, entry.headers,
+                    entry.storedAtMillis);
+            cache.put(cacheKey, entry);
+        }
+
+        boolean stale = age >= cachePolicy.maxAgeMillis;
+        cache.recordHit(stale, fromDisk);
+        if (stale) {
+            revalidate(request, cacheKey, entry);
+        }
+
+        okhttp3.Response rawResponse = new okhttp3.Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .headers(entry.headers)
+                .body(new NoContentResponseBody(entry.contentType, entry.body.length))
+                .sentRequestAtMillis(entry.storedAtMillis)
+                .receivedResponseAtMillis(now)
+                .build();
+        @SuppressWarnings("unchecked") // Entries are namespaced per service method.
+        T body = (T) entry.converted;
+        return Response.success(body, rawResponse);
+    }
+
+    /** Sends a conditional request for a stale entry, at most one per key at a time. */
+    private void revalidate(okhttp3.Request request, final String cacheKey,
+                            final ResponseCache.Entry entry) {
+        final ResponseCache cache = cachePolicy.cache;
+        if (!cache.startRevalidation(cacheKey)) {
+            return;
+        }
+        okhttp3.Request.Builder conditional = request.newBuilder();
+        String etag = entry.etag();
+        if (etag != null) {
+            conditional.header("If-None-Match", etag);
+        }
+        String lastModified = entry.lastModified();
+        if (lastModified != null) {
+            conditional.header("If-Modified-Since", lastModified);
+        }
+        callFactory.newCall(conditional.build()).enqueue(new okhttp3.Callback() {
+            @Override public void onResponse(okhttp3.Call call, okhttp3.Response rawResponse) {
+                try {
+                    if (rawResponse.code() == 304) {
+                        rawResponse.close();
+                        cache.refresh(cacheKey, entry, System.currentTimeMillis());
+                    } else {
+                        // A 2xx replaces the entry, anything else leaves the stale one in place.
+                        parseResponse(rawResponse, cacheKey);
+                    }
+                } catch (Throwable t) {
+                    throwIfFatal(t);
+                } finally {
+                    cache.finishRevalidation(cacheKey);
+                }
+            }
+
+            @Override public void onFailure(okhttp3.Call call, IOException e) {
+                cache.finishRevalidation(cacheKey);
+            }
+        });
     }
 
     private okhttp3.Call createRawCall() throws IOException {
-        okhttp3.Call call = callFactory.newCall(requestFactory.create(args));
+        okhttp3.Request request;
+        if (metricsListener == null) {
+            request = requestFactory.create(args);
+        } else {
+            long start = System.nanoTime();
+            request = requestFactory.create(args);
+            metricsListener.requestBuilt(requestFactory.method, System.nanoTime() - start);
+        }
+        okhttp3.Call call = callFactory.newCall(request);
         if (call == null) {
             throw new NullPointerException("Call.Factory returned null.");
         }
@@ -181,7 +480,17 @@ final class OkHttpCall<T> implements Call<T> {
     }
 
     Response<T> parseResponse(okhttp3.Response rawResponse) throws IOException {
+        return parseResponse(rawResponse, null);
+    }
+
+    /** Parses {@code rawResponse}, storing a successful body in the cache under {@code cacheKey}. */
+    Response<T> parseResponse(okhttp3.Response rawResponse, @Nullable String cacheKey)
+            throws IOException {
         ResponseBody rawBody = rawResponse.body();
+        if (metricsStarted) {
+            metricsListener.responseReceived(requestFactory.method,
+                    System.nanoTime() - networkStartNanos, rawResponse.code());
+        }
 
         // Remove the body's source (the only stateful object) so we can pass the response along.
         rawResponse = rawResponse.newBuilder()
@@ -191,8 +500,9 @@ final class OkHttpCall<T> implements Call<T> {
         int code = rawResponse.code();
         if (code < 200 || code >= 300) {
             try {
-                // Buffer the entire body to avoid future I/O.
-                ResponseBody bufferedBody = Utils.buffer(rawBody);
+                // Buffer the body to avoid future I/O, but no more than maxErrorBodyBytes of it.
+                ResponseBody bufferedBody = bufferErrorBody(rawBody, maxErrorBodyBytes);
+                recordEnded(CallMetricsListener.Outcome.HTTP_ERROR, bufferedBody.contentLength());
                 return Response.error(bufferedBody, rawResponse);
             } finally {
                 rawBody.close();
@@ -201,12 +511,27 @@ final class OkHttpCall<T> implements Call<T> {
 
         if (code == 204 || code == 205) {
             rawBody.close();
+            recordEnded(CallMetricsListener.Outcome.SUCCESS, 0);
             return Response.success(null, rawResponse);
         }
 
+        if (cacheKey != null) {
+            // The serialized body is kept so the cache can spill it to disk later.
+            MediaType contentType = rawBody.contentType();
+            byte[] bytes = rawBody.bytes();
+            long conversionStart = metricsStarted ? System.nanoTime() : 0;
+            T body = responseConverter.convert(ResponseBody.create(contentType, bytes));
+            recordConverted(conversionStart, bytes.length);
+            cachePolicy.cache.put(cacheKey, new ResponseCache.Entry(body, bytes, contentType,
+                    rawResponse.headers(), System.currentTimeMillis()));
+            return Response.success(body, rawResponse);
+        }
+
         ExceptionCatchingResponseBody catchingBody = new ExceptionCatchingResponseBody(rawBody);
         try {
+            long conversionStart = metricsStarted ? System.nanoTime() : 0;
             T body = responseConverter.convert(catchingBody);
+            recordConverted(conversionStart, catchingBody.bytesRead);
             return Response.success(body, rawResponse);
         } catch (RuntimeException e) {
             // If the underlying source threw an exception, propagate that rather than indicating it was
@@ -216,6 +541,21 @@ final class OkHttpCall<T> implements Call<T> {
         }
     }
 
+    /**
+     * Buffers at most {@code limit} bytes of {@code body}. Longer error bodies are truncated so a
+     * misbehaving server cannot make us hold an arbitrarily large error page in memory.
+     */
+    static ResponseBody bufferErrorBody(ResponseBody body, long limit) throws IOException {
+        BufferedSource source = body.source();
+        Buffer buffer = new Buffer();
+        while (buffer.size() < limit) {
+            if (source.read(buffer, limit - buffer.size()) == -1) {
+                break;
+            }
+        }
+        return ResponseBody.create(body.contentType(), buffer.size(), buffer);
+    }
+
     public void cancel() {
         canceled = true;
 
@@ -226,6 +566,10 @@ final class OkHttpCall<T> implements Call<T> {
         if (call != null) {
             call.cancel();
         }
+        RequestScheduler.Task task = scheduledTask;
+        if (task != null) {
+            scheduler.cancel(task); // Fails it right away if it was still waiting.
+        }
     }
 
     @Override public boolean isCanceled() {
@@ -262,10 +606,26 @@ final class OkHttpCall<T> implements Call<T> {
 
     static final class ExceptionCatchingResponseBody extends ResponseBody {
         private final ResponseBody delegate;
+        private final BufferedSource delegateSource;
         @Nullable IOException thrownException;
+        long bytesRead;
 
         ExceptionCatchingResponseBody(ResponseBody delegate) {
             this.delegate = delegate;
+            // One source for the body's lifetime: streaming converters read it well after
+            // convert() returned and must not lose what was already buffered.
+            this.delegateSource = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override public long read(Buffer sink, long byteCount) throws IOException {
+                    try {
+                        long read = super.read(sink, byteCount);
+                        if (read != -1) bytesRead += read;
+                        return read;
+                    } catch (IOException e) {
+                        thrownException = e;
+                        throw e;
+                    }
+                }
+            });
         }
 
         @Override public MediaType contentType() {
@@ -277,16 +637,7 @@ final class OkHttpCall<T> implements Call<T> {
         }
 
         @Override public BufferedSource source() {
-            return Okio.buffer(new ForwardingSource(delegate.source()) {
-                @Override public long read(Buffer sink, long byteCount) throws IOException {
-                    try {
-                        return super.read(sink, byteCount);
-                    } catch (IOException e) {
-                        thrownException = e;
-                        throw e;
-                    }
-                }
-            });
+            return delegateSource;
         }
 
         @Override public void close() {
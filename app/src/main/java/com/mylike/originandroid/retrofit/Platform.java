@@ -6,11 +6,17 @@ import android.os.Looper;
 
 import androidx.annotation.Nullable;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
@@ -44,6 +50,19 @@ class Platform {
         return null;
     }
 
+    /**
+     * An executor which runs every task on a new virtual thread, or null if this runtime has no
+     * virtual threads.
+     */
+    @Nullable Executor virtualThreadExecutor() {
+        return null;
+    }
+
+    /** Wraps {@code callbackExecutor} so that callbacks are delivered in batches. */
+    Executor batchingCallbackExecutor(Executor callbackExecutor) {
+        return new BatchingCallbackExecutor(callbackExecutor);
+    }
+
     List<? extends CallAdapter.Factory> defaultCallAdapterFactories(
             @Nullable Executor callbackExecutor) {
         if (callbackExecutor != null) {
@@ -73,22 +92,71 @@ class Platform {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Returns an invoker of default {@code method} bound to {@code object}, which is cheaper to
+     * call repeatedly than {@link #invokeDefaultMethod}, or null if this platform cannot make one.
+     */
+    @Nullable DefaultMethodInvoker bindDefaultMethod(Method method, Class<?> declaringClass,
+                                                     Object object) throws Throwable {
+        return null;
+    }
+
+    /** A default method bound to one proxy instance. */
+    interface DefaultMethodInvoker {
+        @Nullable Object invoke(Object[] args) throws Throwable;
+    }
+
     @IgnoreJRERequirement // Only classloaded and used on Java 8.
     static class Java8 extends Platform {
+        private final @Nullable Executor virtualThreadExecutor = findVirtualThreadExecutor();
+
+        @Override @Nullable Executor virtualThreadExecutor() {
+            return virtualThreadExecutor;
+        }
+
+        private static @Nullable Executor findVirtualThreadExecutor() {
+            // Java 21+. Looked up reflectively so this still compiles against Java 8.
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                return null;
+            }
+        }
+
         @Override boolean isDefaultMethod(Method method) {
             return method.isDefault();
         }
 
         @Override Object invokeDefaultMethod(Method method, Class<?> declaringClass, Object object,
                                              @Nullable Object... args) throws Throwable {
+            return lookup(declaringClass)
+                    .unreflectSpecial(method, declaringClass)
+                    .bindTo(object)
+                    .invokeWithArguments(args);
+        }
+
+        @Override DefaultMethodInvoker bindDefaultMethod(Method method, Class<?> declaringClass,
+                                                         Object object) throws Throwable {
+            // Spread and box once here so that every invocation is a single invokeExact.
+            final MethodHandle handle = lookup(declaringClass)
+                    .unreflectSpecial(method, declaringClass)
+                    .bindTo(object)
+                    .asSpreader(Object[].class, method.getParameterTypes().length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+            return new DefaultMethodInvoker() {
+                @Override public Object invoke(Object[] args) throws Throwable {
+                    return (Object) handle.invokeExact(args);
+                }
+            };
+        }
+
+        private static Lookup lookup(Class<?> declaringClass) throws Exception {
             // Because the service interface might not be public, we need to use a MethodHandle lookup
             // that ignores the visibility of the declaringClass.
             Constructor<Lookup> constructor = Lookup.class.getDeclaredConstructor(Class.class, int.class);
             constructor.setAccessible(true);
-            return constructor.newInstance(declaringClass, -1 /* trusted */)
-                    .unreflectSpecial(method, declaringClass)
-                    .bindTo(object)
-                    .invokeWithArguments(args);
+            return constructor.newInstance(declaringClass, -1 /* trusted */);
         }
 
         @Override List<? extends CallAdapter.Factory> defaultCallAdapterFactories(
@@ -154,7 +222,7 @@ class Platform {
         }
 
         static class MainThreadExecutor implements Executor {
-            private final Handler handler = new Handler(Looper.getMainLooper());
+            final Handler handler = new Handler(Looper.getMainLooper());
 
             @Override public void execute(Runnable r) {
                 handler.post(r);
@@ -0,0 +1,36 @@
+package com.mylike.originandroid.retrofit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * The scheduling class of this method's calls when a {@link RequestScheduler} is installed with
+ * {@link Retrofit.Builder#requestScheduler}. Methods without the annotation are
+ * {@link Level#NORMAL}.
+ * <pre><code>
+ * &#64;Priority(Priority.Level.LOW)
+ * &#64;GET("feed/prefetch")
+ * Call&lt;Feed&gt; prefetch();
+ * </code></pre>
+ * A {@link Level} set as a tag on the HTTP request, {@code request.tag(Priority.Level.class)},
+ * overrides the annotation for that one call.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Priority {
+    Level value();
+
+    /** Scheduling classes, most urgent first. */
+    enum Level {
+        /** The user is waiting for the result. */
+        HIGH,
+        NORMAL,
+        /** Prefetches and other background work. */
+        LOW
+    }
+}
@@ -9,6 +9,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -27,7 +28,50 @@ final class RequestFactory {
         return new Builder(retrofit, method).build();
     }
 
-    private final Method method;
+    /**
+     * Creates a request factory from metadata generated at compile time, skipping the reflective
+     * annotation parsing of {@link Builder}. The resulting factory honors the same
+     * {@link #create(Object[])} contract as a parsed one.
+     */
+    static RequestFactory fromGenerated(Retrofit retrofit, Method method, GeneratedRequestSpec spec) {
+        Annotation[] noAnnotations = new Annotation[0];
+        GeneratedRequestSpec.Param[] params = spec.params;
+        ParameterHandler<?>[] parameterHandlers = new ParameterHandler<?>[params.length];
+        for (int p = 0; p < params.length; p++) {
+            GeneratedRequestSpec.Param param = params[p];
+            switch (param.kind) {
+                case GeneratedRequestSpec.Param.PATH:
+                    parameterHandlers[p] = new ParameterHandler.Path<>(param.name,
+                            retrofit.stringConverter(param.type, noAnnotations), param.encoded);
+                    break;
+                case GeneratedRequestSpec.Param.QUERY:
+                    parameterHandlers[p] = new ParameterHandler.Query<>(param.name,
+                            retrofit.stringConverter(param.type, noAnnotations), param.encoded);
+                    break;
+                case GeneratedRequestSpec.Param.HEADER:
+                    parameterHandlers[p] = new ParameterHandler.Header<>(param.name,
+                            retrofit.stringConverter(param.type, noAnnotations));
+                    break;
+                case GeneratedRequestSpec.Param.BODY:
+                    Converter<?, RequestBody> converter;
+                    try {
+                        converter = retrofit.requestBodyConverter(param.type, noAnnotations, noAnnotations);
+                    } catch (RuntimeException e) {
+                        // Wide exception range because factories are user code.
+                        throw parameterError(method, e, p, "Unable to create @Body converter for %s",
+                                param.type);
+                    }
+                    parameterHandlers[p] = new ParameterHandler.Body<>(converter);
+                    break;
+                default:
+                    throw new AssertionError(param.kind);
+            }
+        }
+        return new RequestFactory(method, retrofit.baseUrl, spec.httpMethod, spec.relativeUrl, null,
+                null, spec.hasBody, false, false, parameterHandlers, retrofit.leanRequestBuilding, null);
+    }
+
+    final Method method;
     private final HttpUrl baseUrl;
     final String httpMethod;
     private final @Nullable
@@ -40,6 +84,10 @@ final class RequestFactory {
     private final boolean isFormEncoded;
     private final boolean isMultipart;
     private final ParameterHandler<?>[] parameterHandlers;
+    /** Skip copying the arguments into a list for the {@link Invocation} tag. */
+    private final boolean leanRequestBuilding;
+    /** Pre-split {@link #relativeUrl} in lean mode, or null to let the path handlers fill it in. */
+    private final @Nullable UrlTemplate urlTemplate;
 
     RequestFactory(Builder builder) {
         method = builder.method;
@@ -52,6 +100,30 @@ final class RequestFactory {
         isFormEncoded = builder.isFormEncoded;
         isMultipart = builder.isMultipart;
         parameterHandlers = builder.parameterHandlers;
+        leanRequestBuilding = builder.retrofit.leanRequestBuilding;
+        urlTemplate = leanRequestBuilding && builder.gotPath
+                ? UrlTemplate.parse(relativeUrl, builder.pathNames, builder.pathConverters,
+                builder.pathEncoded)
+                : null;
+    }
+
+    private RequestFactory(Method method, HttpUrl baseUrl, String httpMethod,
+                           @Nullable String relativeUrl, @Nullable Headers headers,
+                           @Nullable MediaType contentType, boolean hasBody, boolean isFormEncoded,
+                           boolean isMultipart, ParameterHandler<?>[] parameterHandlers,
+                           boolean leanRequestBuilding, @Nullable UrlTemplate urlTemplate) {
+        this.method = method;
+        this.baseUrl = baseUrl;
+        this.httpMethod = httpMethod;
+        this.relativeUrl = relativeUrl;
+        this.headers = headers;
+        this.contentType = contentType;
+        this.hasBody = hasBody;
+        this.isFormEncoded = isFormEncoded;
+        this.isMultipart = isMultipart;
+        this.parameterHandlers = parameterHandlers;
+        this.leanRequestBuilding = leanRequestBuilding;
+        this.urlTemplate = urlTemplate;
     }
 
     okhttp3.Request create(Object[] args) throws IOException {
@@ -64,6 +136,10 @@ final class RequestFactory {
                     + ") doesn't match expected count (" + handlers.length + ")");
         }
 
+        if (leanRequestBuilding) {
+            return createLean(handlers, args);
+        }
+
         RequestBuilder requestBuilder = new RequestBuilder(httpMethod, baseUrl, relativeUrl,
                 headers, contentType, hasBody, isFormEncoded, isMultipart);
 
@@ -78,6 +154,29 @@ final class RequestFactory {
                 .build();
     }
 
+    /**
+     * Same as {@link #create(Object[])} but with less garbage per call: the path is expanded from the
+     * pre-split {@link UrlTemplate} and the {@link Invocation} tag wraps {@code args} instead of
+     * copying it. The proxy hands every invocation a fresh array, so wrapping it is safe.
+     */
+    private okhttp3.Request createLean(ParameterHandler<Object>[] handlers, Object[] args)
+            throws IOException {
+        UrlTemplate urlTemplate = this.urlTemplate;
+        String url = urlTemplate != null ? urlTemplate.expand(args) : relativeUrl;
+
+        RequestBuilder requestBuilder = new RequestBuilder(httpMethod, baseUrl, url,
+                headers, contentType, hasBody, isFormEncoded, isMultipart);
+        for (int p = 0, count = handlers.length; p < count; p++) {
+            if (urlTemplate == null || !urlTemplate.expands(p)) {
+                handlers[p].apply(requestBuilder, args[p]);
+            }
+        }
+
+        return requestBuilder.get()
+                .tag(Invocation.class, new Invocation(method, Arrays.asList(args)))
+                .build();
+    }
+
     /**
      * Inspects the annotations on an interface method to construct a reusable service method. This
      * requires potentially-expensive reflection so it is best to build each service method only once
@@ -118,6 +217,13 @@ final class RequestFactory {
         Set<String> relativeUrlParamNames;
         @Nullable
         ParameterHandler<?>[] parameterHandlers;
+        // @Path 参数按参数位置记录下来，lean 模式下用来预先拆分 relativeUrl
+        @Nullable
+        String[] pathNames;
+        @Nullable
+        Converter<?, String>[] pathConverters;
+        @Nullable
+        boolean[] pathEncoded;
 
         Builder(Retrofit retrofit, Method method) {
             this.retrofit = retrofit;
@@ -149,6 +255,10 @@ final class RequestFactory {
 
             int parameterCount = parameterAnnotationsArray.length;
             parameterHandlers = new ParameterHandler<?>[parameterCount];
+            pathNames = new String[parameterCount];
+            //noinspection unchecked
+            pathConverters = (Converter<?, String>[]) new Converter<?, ?>[parameterCount];
+            pathEncoded = new boolean[parameterCount];
             for (int p = 0; p < parameterCount; p++) {
                 parameterHandlers[p] = parseParameter(p, parameterTypes[p], parameterAnnotationsArray[p]);
             }
@@ -351,6 +461,9 @@ final class RequestFactory {
                 validatePathName(p, name);
 
                 Converter<?, String> converter = retrofit.stringConverter(type, annotations);
+                pathNames[p] = name;
+                pathConverters[p] = converter;
+                pathEncoded[p] = path.encoded();
                 return new ParameterHandler.Path<>(name, converter, path.encoded());
 
             } else if (annotation instanceof Query) {
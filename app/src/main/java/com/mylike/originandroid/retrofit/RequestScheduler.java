@@ -0,0 +1,180 @@
+package com.mylike.originandroid.retrofit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds enqueued calls back until they may be sent, and sends them by {@link Priority}: a
+ * {@link Priority.Level#HIGH HIGH} call waiting for a slot always goes before {@code NORMAL} and
+ * {@code LOW} ones, calls of one level go in order. At most {@code maxRequests} calls are in flight
+ * at once, and at most {@code maxRequestsPerHost} to one host. A call whose host is at its limit
+ * does not hold back calls to other hosts.
+ * <p>
+ * A call canceled while it waits is dropped without being sent and fails with "Canceled".
+ * <p>
+ * Install it with {@link Retrofit.Builder#requestScheduler}. It only orders work submitted through
+ * Retrofit; keep the call factory's own limits, e.g. OkHttp's {@code Dispatcher}, at or above the
+ * ones set here so they do not queue again behind it.
+ */
+public final class RequestScheduler {
+    private static final Priority.Level[] LEVELS = Priority.Level.values();
+
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+
+    // Guarded by this.
+    private final List<ArrayDeque<Task>> queues = new ArrayList<>(LEVELS.length);
+    private final Map<String, HostCount> runningPerHost = new HashMap<>();
+    private int runningCount;
+    private int queuedCount;
+
+    private final ConcurrentHistogram[] waitNanos = new ConcurrentHistogram[LEVELS.length];
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile int maxQueuedCount;
+
+    public RequestScheduler(int maxRequests, int maxRequestsPerHost) {
+        if (maxRequests < 1) throw new IllegalArgumentException("maxRequests < 1");
+        if (maxRequestsPerHost < 1) throw new IllegalArgumentException("maxRequestsPerHost < 1");
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        for (int i = 0; i < LEVELS.length; i++) {
+            queues.add(new ArrayDeque<Task>());
+            waitNanos[i] = new ConcurrentHistogram();
+        }
+    }
+
+    void enqueue(Task task) {
+        task.enqueuedAtNanos = System.nanoTime();
+        synchronized (this) {
+            queues.get(task.level.ordinal()).add(task);
+            if (++queuedCount > maxQueuedCount) {
+                maxQueuedCount = queuedCount;
+            }
+        }
+        promoteAndRun();
+    }
+
+    /** Drops {@code task} if it is still waiting. Returns false if it was already sent. */
+    boolean cancel(Task task) {
+        synchronized (this) {
+            if (!queues.get(task.level.ordinal()).remove(task)) return false;
+            queuedCount--;
+        }
+        droppedCount.incrementAndGet();
+        task.drop();
+        return true;
+    }
+
+    /** Called once a sent task completed, successfully or not. */
+    void finished(Task task) {
+        synchronized (this) {
+            runningCount--;
+            HostCount host = runningPerHost.get(task.host);
+            if (--host.count == 0) {
+                runningPerHost.remove(task.host);
+            }
+        }
+        promoteAndRun();
+    }
+
+    private void promoteAndRun() {
+        List<Task> ready = new ArrayList<>();
+        List<Task> dropped = new ArrayList<>();
+        synchronized (this) {
+            for (int level = 0; level < LEVELS.length && runningCount < maxRequests; level++) {
+                for (Iterator<Task> i = queues.get(level).iterator(); i.hasNext(); ) {
+                    Task task = i.next();
+                    if (task.isCanceled()) {
+                        i.remove();
+                        queuedCount--;
+                        dropped.add(task);
+                        continue;
+                    }
+                    if (runningCount >= maxRequests) break;
+                    HostCount host = runningPerHost.get(task.host);
+                    if (host != null && host.count >= maxRequestsPerHost) continue;
+
+                    i.remove();
+                    queuedCount--;
+                    runningCount++;
+                    if (host == null) {
+                        host = new HostCount();
+                        runningPerHost.put(task.host, host);
+                    }
+                    host.count++;
+                    ready.add(task);
+                }
+            }
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0, size = dropped.size(); i < size; i++) {
+            droppedCount.incrementAndGet();
+            dropped.get(i).drop();
+        }
+        for (int i = 0, size = ready.size(); i < size; i++) {
+            Task task = ready.get(i);
+            waitNanos[task.level.ordinal()].record(now - task.enqueuedAtNanos);
+            task.start();
+        }
+    }
+
+    /** Calls waiting to be sent. */
+    public synchronized int queuedCount() {
+        return queuedCount;
+    }
+
+    /** Calls of {@code level} waiting to be sent. */
+    public synchronized int queuedCount(Priority.Level level) {
+        return queues.get(level.ordinal()).size();
+    }
+
+    /** The largest number of calls that were waiting at the same time. */
+    public int maxQueuedCount() {
+        return maxQueuedCount;
+    }
+
+    /** Calls sent and not yet completed. */
+    public synchronized int runningCount() {
+        return runningCount;
+    }
+
+    /** Calls canceled while they were waiting. */
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    /** How long calls of {@code level} waited before they were sent, in nanoseconds. */
+    public ConcurrentHistogram.Snapshot waitTime(Priority.Level level) {
+        return waitNanos[level.ordinal()].snapshot();
+    }
+
+    private static final class HostCount {
+        int count;
+    }
+
+    /** One call waiting for, or holding, a slot. */
+    abstract static class Task {
+        final String host;
+        final Priority.Level level;
+        long enqueuedAtNanos;
+
+        Task(String host, Priority.Level level) {
+            this.host = host;
+            this.level = level;
+        }
+
+        abstract boolean isCanceled();
+
+        /** Sends the call. {@link #finished} must follow once it completes. */
+        abstract void start();
+
+        /** Fails the call without sending it. */
+        abstract void drop();
+    }
+}
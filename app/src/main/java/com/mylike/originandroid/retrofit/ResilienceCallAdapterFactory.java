@@ -0,0 +1,598 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@linkplain CallAdapter.Factory call adapter factory} which makes calls more resilient by
+ * re-issuing them with {@link Call#clone()}:
+ * <ul>
+ * <li><b>Retries.</b> A call of an idempotent method ({@code GET}, {@code HEAD}, {@code PUT},
+ * {@code DELETE}, {@code OPTIONS}) that fails with an {@link IOException} or a 5xx response is
+ * retried with exponential backoff.
+ * <li><b>Hedging.</b> When an idempotent call has not answered after the 95th percentile of its
+ * method's recent latencies, a second copy is sent. The first copy to answer wins and the other one
+ * is canceled.
+ * <li><b>Circuit breaking.</b> After a number of consecutive failures from one host, calls to it
+ * fail immediately for a while. Then a single trial call is let through; its outcome closes or
+ * re-opens the circuit.
+ * </ul>
+ * Install it before other factories; it delegates to the next factory able to adapt the return
+ * type, so callbacks are still delivered on the callback executor.
+ * <pre><code>
+ * Retrofit retrofit = new Retrofit.Builder()
+ *     .baseUrl("https://api.example.com/")
+ *     .addCallAdapterFactory(new ResilienceCallAdapterFactory.Builder()
+ *         .maxRetries(2)
+ *         .hedging(true)
+ *         .build())
+ *     .build();
+ * </code></pre>
+ */
+public final class ResilienceCallAdapterFactory extends CallAdapter.Factory
+        implements HandlesRawTypes {
+    final int maxRetries;
+    final long initialBackoffMillis;
+    final long maxBackoffMillis;
+    final boolean hedging;
+    final long minHedgeDelayMillis;
+    final int minHedgeSamples;
+    final int failureThreshold;
+    final long openMillis;
+
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Retrofit Resilience");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    ResilienceCallAdapterFactory(Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.hedging = builder.hedging;
+        this.minHedgeDelayMillis = builder.minHedgeDelayMillis;
+        this.minHedgeSamples = builder.minHedgeSamples;
+        this.failureThreshold = builder.failureThreshold;
+        this.openMillis = builder.openMillis;
+    }
+
+    @Override public Set<Class<?>> handledRawTypes() {
+        return Collections.<Class<?>>singleton(Call.class);
+    }
+
+    @Override public @Nullable CallAdapter<?, ?> get(Type returnType, Annotation[] annotations,
+                                                      Retrofit retrofit) {
+        if (getRawType(returnType) != Call.class) {
+            return null;
+        }
+        //noinspection unchecked
+        final CallAdapter<Object, Object> delegate =
+                (CallAdapter<Object, Object>) retrofit.nextCallAdapter(this, returnType, annotations);
+        // 每个 service method 单独统计延迟，对冲的等待时间取它的 p95
+        final LatencyTracker latencies = new LatencyTracker();
+        return new CallAdapter<Object, Object>() {
+            @Override public Type responseType() {
+                return delegate.responseType();
+            }
+
+            @Override public Object adapt(Call<Object> call) {
+                return delegate.adapt(new ResilientCall<>(ResilienceCallAdapterFactory.this, call,
+                        latencies));
+            }
+        };
+    }
+
+    CircuitBreaker breaker(String host) {
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            CircuitBreaker newBreaker = new CircuitBreaker(failureThreshold, openMillis);
+            breaker = breakers.putIfAbsent(host, newBreaker);
+            if (breaker == null) {
+                breaker = newBreaker;
+            }
+        }
+        return breaker;
+    }
+
+    long backoffMillis(int retry) {
+        long backoff = initialBackoffMillis << Math.min(retry, 30);
+        return backoff < 0 || backoff > maxBackoffMillis ? maxBackoffMillis : backoff;
+    }
+
+    static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method)
+                || "DELETE".equals(method) || "OPTIONS".equals(method);
+    }
+
+    static boolean isRetryable(Response<?> response) {
+        return response.code() >= 500;
+    }
+
+    /** Recent latencies of one service method, used to pick the hedging delay. */
+    static final class LatencyTracker {
+        private static final long RECOMPUTE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final ConcurrentHistogram histogram = new ConcurrentHistogram();
+        private volatile long p95Millis = -1;
+        private volatile long computedAtNanos;
+
+        void record(long tookNanos) {
+            histogram.record(tookNanos);
+        }
+
+        /** The 95th percentile in milliseconds, or -1 with fewer than {@code minSamples}. */
+        long p95Millis(int minSamples) {
+            long now = System.nanoTime();
+            if (p95Millis == -1 || now - computedAtNanos > RECOMPUTE_INTERVAL_NANOS) {
+                ConcurrentHistogram.Snapshot snapshot = histogram.snapshot();
+                p95Millis = snapshot.count() < minSamples
+                        ? -1
+                        : TimeUnit.NANOSECONDS.toMillis(snapshot.valueAtPercentile(95));
+                computedAtNanos = now;
+            }
+            return p95Millis;
+        }
+    }
+
+    /** Closed, open, or half-open with one trial call in flight. */
+    static final class CircuitBreaker {
+        private final int failureThreshold;
+        private final long openMillis;
+        // Guarded by this.
+        private int consecutiveFailures;
+        private long openUntilMillis;
+        private @Nullable Object trialOwner;
+
+        CircuitBreaker(int failureThreshold, long openMillis) {
+            this.failureThreshold = failureThreshold;
+            this.openMillis = openMillis;
+        }
+
+        /**
+         * Returns true if {@code caller} may send a call. When half-open, the caller let through
+         * owns the trial until it reports an outcome or {@linkplain #onAbandoned abandons} it.
+         */
+        synchronized boolean allowRequest(Object caller) {
+            if (consecutiveFailures < failureThreshold) return true;
+            if (System.currentTimeMillis() < openUntilMillis || trialOwner != null) return false;
+            trialOwner = caller;
+            return true;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            trialOwner = null;
+        }
+
+        synchronized void onFailure() {
+            if (++consecutiveFailures >= failureThreshold) {
+                openUntilMillis = System.currentTimeMillis() + openMillis;
+            }
+            trialOwner = null;
+        }
+
+        /**
+         * Releases the trial held by {@code caller}, if any, when its call ends without an
+         * outcome: canceled, or failed with something other than an I/O error.
+         */
+        synchronized void onAbandoned(Object caller) {
+            if (trialOwner == caller) trialOwner = null;
+        }
+    }
+
+    static final class ResilientCall<T> implements Call<T> {
+        final ResilienceCallAdapterFactory factory;
+        final Call<T> delegate;
+        final LatencyTracker latencies;
+        private volatile boolean executed;
+        private volatile boolean canceled;
+        private volatile @Nullable Execution<T> execution;
+        /** The attempt {@link #execute()} is running, for {@link #cancel()}. */
+        private volatile @Nullable Call<T> current;
+
+        ResilientCall(ResilienceCallAdapterFactory factory, Call<T> delegate,
+                      LatencyTracker latencies) {
+            this.factory = factory;
+            this.delegate = delegate;
+            this.latencies = latencies;
+        }
+
+        @Override public void enqueue(Callback<T> callback) {
+            Utils.checkNotNull(callback, "callback == null");
+            synchronized (this) {
+                if (executed) throw new IllegalStateException("Already executed.");
+                executed = true;
+            }
+            okhttp3.Request request;
+            try {
+                request = delegate.request();
+            } catch (RuntimeException e) {
+                // Let the delegate report the creation failure through the callback as usual.
+                delegate.enqueue(new SingleFlightCallAdapterFactory.ForwardingCallback<>(this,
+                        callback));
+                return;
+            }
+            Execution<T> execution = new Execution<>(this, callback, request.method(),
+                    factory.breaker(request.url().host()));
+            this.execution = execution;
+            if (canceled) {
+                execution.cancel();
+            } else {
+                execution.attempt();
+            }
+        }
+
+        @Override public Response<T> execute() throws IOException {
+            synchronized (this) {
+                if (executed) throw new IllegalStateException("Already executed.");
+                executed = true;
+            }
+            okhttp3.Request request = delegate.request();
+            CircuitBreaker breaker = factory.breaker(request.url().host());
+            int retries = isIdempotent(request.method()) ? factory.maxRetries : 0;
+            Call<T> call = delegate;
+            current = call;
+            for (int retry = 0; ; retry++) {
+                // Checked after current is set, so a racing cancel() either sees the new attempt
+                // or is seen here.
+                if (canceled) throw new IOException("Canceled");
+                if (!breaker.allowRequest(this)) {
+                    throw new IOException("Circuit open for " + request.url().host());
+                }
+                long start = System.nanoTime();
+                try {
+                    Response<T> response = call.execute();
+                    if (!isRetryable(response)) {
+                        breaker.onSuccess();
+                        latencies.record(System.nanoTime() - start);
+                        return response;
+                    }
+                    breaker.onFailure();
+                    if (retry >= retries) return response;
+                } catch (IOException e) {
+                    if (canceled) {
+                        breaker.onAbandoned(this);
+                        throw e;
+                    }
+                    breaker.onFailure();
+                    if (retry >= retries) throw e;
+                } catch (RuntimeException | Error e) {
+                    breaker.onAbandoned(this);
+                    throw e;
+                }
+                backoff(factory.backoffMillis(retry));
+                call = delegate.clone();
+                current = call;
+            }
+        }
+
+        /** Waits {@code millis} before the next attempt, or until canceled. */
+        private void backoff(long millis) throws InterruptedIOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            synchronized (this) {
+                long remaining;
+                while (!canceled && (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted during retry backoff");
+                    }
+                }
+            }
+        }
+
+        @Override public boolean isExecuted() {
+            return executed;
+        }
+
+        @Override public void cancel() {
+            canceled = true;
+            Execution<T> execution = this.execution;
+            if (execution != null) {
+                execution.cancel();
+                return;
+            }
+            Call<T> current = this.current;
+            (current != null ? current : delegate).cancel();
+            synchronized (this) {
+                notifyAll(); // Ends a retry backoff of execute().
+            }
+        }
+
+        @Override public boolean isCanceled() {
+            return canceled;
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone") // Performing deep clone.
+        @Override public Call<T> clone() {
+            return new ResilientCall<>(factory, delegate.clone(), latencies);
+        }
+
+        @Override public Request request() {
+            return delegate.request();
+        }
+    }
+
+    /** The attempts, hedges and backoff timers behind one enqueued {@link ResilientCall}. */
+    static final class Execution<T> {
+        final ResilientCall<T> owner;
+        final Callback<T> callback;
+        final boolean idempotent;
+        final CircuitBreaker breaker;
+        // Guarded by this.
+        private final List<Call<T>> inFlight = new ArrayList<>(2);
+        private int retry;
+        private boolean hedged;
+        private boolean done;
+        /** Whether a copy of the current attempt failed in a way the circuit breaker counts. */
+        private boolean attemptFailed;
+        private @Nullable ScheduledFuture<?> timer;
+        private @Nullable Throwable lastFailure;
+        private @Nullable Response<T> lastResponse;
+
+        Execution(ResilientCall<T> owner, Callback<T> callback, String method,
+                  CircuitBreaker breaker) {
+            this.owner = owner;
+            this.callback = callback;
+            this.idempotent = isIdempotent(method);
+            this.breaker = breaker;
+        }
+
+        /** Starts attempt number {@link #retry}. */
+        void attempt() {
+            final ResilienceCallAdapterFactory factory = owner.factory;
+            synchronized (this) {
+                if (done) return;
+            }
+            if (!breaker.allowRequest(this)) {
+                String host = owner.delegate.request().url().host();
+                finish(null, new IOException("Circuit open for " + host));
+                return;
+            }
+            synchronized (this) {
+                hedged = false;
+                attemptFailed = false;
+                timer = null;
+            }
+            Call<T> call = retry == 0 ? owner.delegate : owner.delegate.clone();
+            if (!send(call)) {
+                // Canceled since the check above; the call was never sent.
+                breaker.onAbandoned(this);
+                return;
+            }
+
+            long hedgeDelay = factory.hedging && idempotent
+                    ? owner.latencies.p95Millis(factory.minHedgeSamples)
+                    : -1;
+            if (hedgeDelay >= 0) {
+                ScheduledFuture<?> hedgeTimer = factory.scheduler.schedule(new Runnable() {
+                    @Override public void run() {
+                        hedge();
+                    }
+                }, Math.max(hedgeDelay, factory.minHedgeDelayMillis), TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    if (timer == null && !done) timer = hedgeTimer;
+                }
+            }
+        }
+
+        void hedge() {
+            synchronized (this) {
+                if (done || hedged || inFlight.isEmpty()) return;
+                hedged = true;
+                timer = null;
+            }
+            send(owner.delegate.clone());
+        }
+
+        /** Sends {@code call} as a copy of the current attempt, unless already done. */
+        private boolean send(final Call<T> call) {
+            synchronized (this) {
+                if (done) return false;
+                inFlight.add(call);
+            }
+            final long start = System.nanoTime();
+            call.enqueue(new Callback<T>() {
+                @Override public void onResponse(Call<T> c, Response<T> response) {
+                    if (isRetryable(response)) {
+                        failed(call, response, null);
+                    } else {
+                        breaker.onSuccess();
+                        owner.latencies.record(System.nanoTime() - start);
+                        won(call, response);
+                    }
+                }
+
+                @Override public void onFailure(Call<T> c, Throwable t) {
+                    failed(call, null, t);
+                }
+            });
+            return true;
+        }
+
+        private void won(Call<T> winner, Response<T> response) {
+            synchronized (this) {
+                inFlight.remove(winner);
+            }
+            finish(response, null);
+        }
+
+        private void failed(Call<T> call, @Nullable Response<T> response,
+                            @Nullable Throwable failure) {
+            boolean retry;
+            synchronized (this) {
+                if (done) return;
+                inFlight.remove(call);
+                if (response != null || !call.isCanceled() || lastFailure == null) {
+                    lastResponse = response;
+                    lastFailure = failure;
+                }
+                // Like execute(), only I/O errors and 5xx responses count against the host;
+                // a converter failure or a cancellation does not.
+                if (response != null || failure instanceof IOException && !call.isCanceled()) {
+                    attemptFailed = true;
+                }
+                // Another copy of this attempt may still succeed.
+                if (!inFlight.isEmpty()) return;
+                // Once per attempt, however many copies of it were sent, and before the next
+                // attempt asks the breaker again.
+                if (attemptFailed) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onAbandoned(this);
+                }
+                if (timer != null) {
+                    timer.cancel(false);
+                    timer = null;
+                }
+                retry = idempotent && !owner.isCanceled() && this.retry < owner.factory.maxRetries
+                        && (failure == null || failure instanceof IOException);
+                if (retry) {
+                    final int current = this.retry++;
+                    timer = owner.factory.scheduler.schedule(new Runnable() {
+                        @Override public void run() {
+                            attempt();
+                        }
+                    }, owner.factory.backoffMillis(current), TimeUnit.MILLISECONDS);
+                }
+            }
+            if (!retry) {
+                finish(lastResponse, lastFailure);
+            }
+        }
+
+        void cancel() {
+            List<Call<T>> calls;
+            boolean idle;
+            synchronized (this) {
+                if (done) return;
+                calls = new ArrayList<>(inFlight);
+                idle = calls.isEmpty();
+                if (timer != null) {
+                    timer.cancel(false);
+                    timer = null;
+                }
+            }
+            for (Call<T> call : calls) {
+                call.cancel(); // Each reports back through failed().
+            }
+            if (idle) {
+                // Between attempts, nothing else would report the cancellation.
+                finish(null, new IOException("Canceled"));
+            }
+        }
+
+        /** Delivers the outcome once and cancels every copy still in flight. */
+        private void finish(@Nullable Response<T> response, @Nullable Throwable failure) {
+            List<Call<T>> losers;
+            synchronized (this) {
+                if (done) return;
+                done = true;
+                if (timer != null) {
+                    timer.cancel(false);
+                    timer = null;
+                }
+                losers = new ArrayList<>(inFlight);
+                inFlight.clear();
+            }
+            for (Call<T> loser : losers) {
+                loser.cancel();
+            }
+            try {
+                if (response != null) {
+                    callback.onResponse(owner, response);
+                } else {
+                    callback.onFailure(owner, owner.isCanceled()
+                            ? new IOException("Canceled")
+                            : failure);
+                }
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    /** Configures a {@link ResilienceCallAdapterFactory}. */
+    public static final class Builder {
+        int maxRetries = 2;
+        long initialBackoffMillis = 100;
+        long maxBackoffMillis = 5000;
+        boolean hedging;
+        long minHedgeDelayMillis = 50;
+        int minHedgeSamples = 20;
+        int failureThreshold = 5;
+        long openMillis = 30000;
+
+        /** Retries after the first attempt of an idempotent call. Defaults to 2. */
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) throw new IllegalArgumentException("maxRetries < 0");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * The wait before the first retry, doubled for every further one up to {@code max}.
+         * Defaults to 100 ms and 5 s.
+         */
+        public Builder backoff(long initial, long max, TimeUnit unit) {
+            if (initial < 0) throw new IllegalArgumentException("initial < 0");
+            if (max < initial) throw new IllegalArgumentException("max < initial");
+            this.initialBackoffMillis = unit.toMillis(initial);
+            this.maxBackoffMillis = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Send a second copy of an idempotent call that has not answered after its method's p95
+         * latency, but no earlier than {@link #minHedgeDelay}. Hedging starts once a method has
+         * {@code 20} recorded latencies. Off by default.
+         */
+        public Builder hedging(boolean hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /** The shortest wait before a hedge is sent. Defaults to 50 ms. */
+        public Builder minHedgeDelay(long delay, TimeUnit unit) {
+            if (delay < 0) throw new IllegalArgumentException("delay < 0");
+            this.minHedgeDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Open a host's circuit after {@code failureThreshold} consecutive failures and keep it
+         * open for {@code openDuration}. Defaults to 5 failures and 30 s.
+         */
+        public Builder circuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+            if (failureThreshold < 1) throw new IllegalArgumentException("failureThreshold < 1");
+            if (openDuration < 0) throw new IllegalArgumentException("openDuration < 0");
+            this.failureThreshold = failureThreshold;
+            this.openMillis = unit.toMillis(openDuration);
+            return this;
+        }
+
+        public ResilienceCallAdapterFactory build() {
+            return new ResilienceCallAdapterFactory(this);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+
+/**
+ * A cache of converted response bodies for service methods annotated with {@link Cache}.
+ * <p>
+ * Entries live in a memory LRU bounded by the size of their serialized bodies. Entries evicted from
+ * memory can spill their serialized body into a memory-mapped disk segment; a hit there converts
+ * the body again and promotes it back to memory. The disk segment is a ring: once it is full, the
+ * oldest spilled bodies are overwritten. It is scratch space for this process and is not read back
+ * after a restart.
+ * <p>
+ * Hit, miss and eviction counters are exposed so the sizes can be tuned.
+ */
+public final class ResponseCache {
+    private final long maxMemoryBytes;
+    private final @Nullable MappedSegment disk;
+
+    // Guarded by this.
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private final Set<String> revalidating = new HashSet<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    /** Creates a memory-only cache holding up to {@code maxMemoryBytes} of serialized bodies. */
+    public ResponseCache(long maxMemoryBytes) {
+        if (maxMemoryBytes <= 0) throw new IllegalArgumentException("maxMemoryBytes <= 0");
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.disk = null;
+    }
+
+    /**
+     * Creates a cache which spills bodies evicted from memory into {@code diskFile}, mapped with a
+     * capacity of {@code maxDiskBytes}. The file is truncated.
+     */
+    public ResponseCache(long maxMemoryBytes, File diskFile, int maxDiskBytes) throws IOException {
+        if (maxMemoryBytes <= 0) throw new IllegalArgumentException("maxMemoryBytes <= 0");
+        if (maxDiskBytes <= 0) throw new IllegalArgumentException("maxDiskBytes <= 0");
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.disk = new MappedSegment(diskFile, maxDiskBytes);
+    }
+
+    /** Responses served from memory or disk within their {@link Cache#maxAge}. */
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    /** Responses served past {@link Cache#maxAge} while being revalidated. */
+    public long staleHitCount() {
+        return staleHitCount.get();
+    }
+
+    /** Hits, fresh or stale, whose body had to be read back from the disk segment. */
+    public long diskHitCount() {
+        return diskHitCount.get();
+    }
+
+    /** Lookups that went to the network. */
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /** Entries dropped from memory, whether or not they were spilled to disk. */
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    /** Conditional requests sent to refresh stale entries. */
+    public long revalidationCount() {
+        return revalidationCount.get();
+    }
+
+    /** Serialized bytes currently held in memory. */
+    public synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    /** Drops every entry. Counters are kept. */
+    public synchronized void evictAll() {
+        memory.clear();
+        memoryBytes = 0;
+        if (disk != null) {
+            disk.clear();
+        }
+    }
+
+    /**
+     * Returns the entry for {@code key}, or null on a miss. An entry read back from disk carries
+     * only its serialized body and must be {@linkplain #put converted and put} again.
+     */
+    synchronized @Nullable Entry get(String key) {
+        Entry entry = memory.get(key);
+        if (entry == null && disk != null) {
+            entry = disk.get(key);
+        }
+        return entry;
+    }
+
+    synchronized void put(String key, Entry entry) {
+        Entry previous = memory.put(key, entry);
+        if (previous != null) {
+            memoryBytes -= previous.body.length;
+        }
+        if (disk != null) {
+            disk.remove(key);
+        }
+        memoryBytes += entry.body.length;
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> i = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && i.hasNext()) {
+            Map.Entry<String, Entry> eldest = i.next();
+            i.remove();
+            Entry entry = eldest.getValue();
+            memoryBytes -= entry.body.length;
+            evictionCount.incrementAndGet();
+            if (disk != null) {
+                disk.put(eldest.getKey(), entry);
+            }
+        }
+    }
+
+    /** Marks an entry as fresh again after the server answered 304 Not Modified. */
+    synchronized void refresh(String key, Entry entry, long nowMillis) {
+        Entry current = memory.get(key);
+        if (current == entry) {
+            memory.put(key, entry.refreshed(nowMillis));
+        }
+    }
+
+    /** Returns false if {@code key} is already being revalidated. */
+    synchronized boolean startRevalidation(String key) {
+        if (!revalidating.add(key)) return false;
+        revalidationCount.incrementAndGet();
+        return true;
+    }
+
+    synchronized void finishRevalidation(String key) {
+        revalidating.remove(key);
+    }
+
+    void recordHit(boolean stale, boolean fromDisk) {
+        (stale ? staleHitCount : hitCount).incrementAndGet();
+        if (fromDisk) diskHitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    /**
+     * A cached response. An entry read back from disk is {@link #spilled}: it has no
+     * {@link #converted} body yet. Otherwise a null {@link #converted} body is a legitimate value,
+     * such as the body of a {@code Call<Void>}.
+     */
+    static final class Entry {
+        final @Nullable Object converted;
+        final byte[] body;
+        final @Nullable MediaType contentType;
+        final Headers headers;
+        final long storedAtMillis;
+        final boolean spilled;
+
+        Entry(@Nullable Object converted, byte[] body, @Nullable MediaType contentType,
+              Headers headers, long storedAtMillis) {
+            this(converted, body, contentType, headers, storedAtMillis, false);
+        }
+
+        private Entry(@Nullable Object converted, byte[] body, @Nullable MediaType contentType,
+                      Headers headers, long storedAtMillis, boolean spilled) {
+            this.converted = converted;
+            this.body = body;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.storedAtMillis = storedAtMillis;
+            this.spilled = spilled;
+        }
+
+        @Nullable String etag() {
+            return headers.get("ETag");
+        }
+
+        @Nullable String lastModified() {
+            return headers.get("Last-Modified");
+        }
+
+        Entry refreshed(long nowMillis) {
+            return new Entry(converted, body, contentType, headers, nowMillis);
+        }
+    }
+
+    /** The freshness rules of one {@link Cache}-annotated service method. */
+    static final class Policy {
+        final ResponseCache cache;
+        /** Keeps different service methods, and so different body types, apart. */
+        final String namespace;
+        final long maxAgeMillis;
+        final long staleWhileRevalidateMillis;
+
+        Policy(ResponseCache cache, String namespace, Cache annotation) {
+            this.cache = cache;
+            this.namespace = namespace;
+            this.maxAgeMillis = annotation.maxAge() * 1000L;
+            this.staleWhileRevalidateMillis = annotation.staleWhileRevalidate() * 1000L;
+        }
+
+        String key(okhttp3.Request request) {
+            return namespace + '\n' + request.url() + '\n' + request.headers();
+        }
+    }
+
+    /**
+     * A ring of serialized bodies in a memory-mapped file. Metadata stays on the heap; only the
+     * bodies, which are the bulk of an entry, are moved out of it.
+     */
+    static final class MappedSegment {
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final LinkedHashMap<String, Slot> slots = new LinkedHashMap<>();
+        private int writePosition;
+
+        MappedSegment(File file, int capacity) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(0);
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } finally {
+                raf.close(); // The mapping stays valid after the channel is closed.
+            }
+            this.capacity = capacity;
+        }
+
+        void put(String key, Entry entry) {
+            remove(key);
+            int length = entry.body.length;
+            if (length > capacity) return;
+            if (writePosition + length > capacity) {
+                writePosition = 0;
+            }
+            int start = writePosition;
+            int end = start + length;
+            // Forget every slot the new body is about to overwrite.
+            Iterator<Slot> i = slots.values().iterator();
+            while (i.hasNext()) {
+                Slot slot = i.next();
+                if (slot.offset < end && start < slot.offset + slot.length) {
+                    i.remove();
+                }
+            }
+            buffer.position(start);
+            buffer.put(entry.body);
+            writePosition = end;
+            slots.put(key, new Slot(start, length, entry.contentType, entry.headers,
+                    entry.storedAtMillis));
+        }
+
+        @Nullable Entry get(String key) {
+            Slot slot = slots.get(key);
+            if (slot == null) return null;
+            byte[] body = new byte[slot.length];
+            buffer.position(slot.offset);
+            buffer.get(body);
+            return new Entry(null, body, slot.contentType, slot.headers, slot.storedAtMillis, true);
+        }
+
+        void remove(String key) {
+            slots.remove(key);
+        }
+
+        void clear() {
+            slots.clear();
+            writePosition = 0;
+        }
+
+        static final class Slot {
+            final int offset;
+            final int length;
+            final @Nullable MediaType contentType;
+            final Headers headers;
+            final long storedAtMillis;
+
+            Slot(int offset, int length, @Nullable MediaType contentType, Headers headers,
+                 long storedAtMillis) {
+                this.offset = offset;
+                this.length = length;
+                this.contentType = contentType;
+                this.headers = headers;
+                this.storedAtMillis = storedAtMillis;
+            }
+        }
+    }
+}
@@ -20,20 +20,28 @@ import androidx.annotation.Nullable;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
-import okhttp3.internal.platform.Platform;
 
 import static java.util.Collections.unmodifiableList;
 
@@ -58,6 +66,12 @@ import static java.util.Collections.unmodifiableList;
  */
 public final class Retrofit {
     private final Map<Method, ServiceMethod<?>> serviceMethodCache = new ConcurrentHashMap<>();
+    /** Parses in progress, so that concurrent misses on different methods do not serialize. */
+    private final ConcurrentHashMap<Method, FutureTask<ServiceMethod<?>>> inFlightServiceMethods =
+            new ConcurrentHashMap<>();
+    /** Generated bindings by service interface; {@link #NO_BINDING} marks a lookup that failed. */
+    private final Map<Class<?>, Object> generatedBindings = new ConcurrentHashMap<>();
+    private static final Object NO_BINDING = new Object();
 
     final okhttp3.Call.Factory callFactory;
     final HttpUrl baseUrl;
@@ -66,16 +80,43 @@ public final class Retrofit {
     final @Nullable
     Executor callbackExecutor;
     final boolean validateEagerly;
+    final boolean precomputeServiceMethods;
+    final boolean useGeneratedRequestFactories;
+    final boolean leanRequestBuilding;
+    final @Nullable ResponseCache responseCache;
+    final long maxErrorBodyBytes;
+    final @Nullable Executor dispatchExecutor;
+    final boolean batchCallbacks;
+    final @Nullable CallMetricsListener metricsListener;
+    final @Nullable RequestScheduler requestScheduler;
+    private final FactoryIndex callAdapterIndex;
+    private final FactoryIndex converterIndex;
 
     Retrofit(okhttp3.Call.Factory callFactory, HttpUrl baseUrl,
              List<Converter.Factory> converterFactories, List<CallAdapter.Factory> callAdapterFactories,
-             @Nullable Executor callbackExecutor, boolean validateEagerly) {
+             @Nullable Executor callbackExecutor, boolean validateEagerly,
+             boolean precomputeServiceMethods, boolean useGeneratedRequestFactories,
+             boolean leanRequestBuilding, @Nullable ResponseCache responseCache,
+             long maxErrorBodyBytes, @Nullable Executor dispatchExecutor, boolean batchCallbacks,
+             @Nullable CallMetricsListener metricsListener,
+             @Nullable RequestScheduler requestScheduler) {
         this.callFactory = callFactory;
         this.baseUrl = baseUrl;
         this.converterFactories = converterFactories; // Copy+unmodifiable at call site.
         this.callAdapterFactories = callAdapterFactories; // Copy+unmodifiable at call site.
         this.callbackExecutor = callbackExecutor;
         this.validateEagerly = validateEagerly;
+        this.precomputeServiceMethods = precomputeServiceMethods;
+        this.useGeneratedRequestFactories = useGeneratedRequestFactories;
+        this.leanRequestBuilding = leanRequestBuilding;
+        this.responseCache = responseCache;
+        this.maxErrorBodyBytes = maxErrorBodyBytes;
+        this.dispatchExecutor = dispatchExecutor;
+        this.batchCallbacks = batchCallbacks;
+        this.metricsListener = metricsListener;
+        this.requestScheduler = requestScheduler;
+        this.callAdapterIndex = new FactoryIndex(callAdapterFactories);
+        this.converterIndex = new FactoryIndex(converterFactories);
     }
 
     /**
@@ -127,9 +168,12 @@ public final class Retrofit {
     @SuppressWarnings("unchecked") // Single-interface proxy creation guarded by parameter safety.
     public <T> T create(final Class<T> service) {
         Utils.validateServiceInterface(service);
-        if (validateEagerly) {
+        if (validateEagerly && !precomputeServiceMethods) {
             eagerlyValidateMethods(service);
         }
+        // 创建代理时就把每个方法分好类（Object / default / service），调用时只需查一次表
+        final ServiceMethodTable dispatchTable =
+                ServiceMethodTable.build(this, service, precomputeServiceMethods);
         return (T) Proxy.newProxyInstance(service.getClassLoader(), new Class<?>[]{service},
                 new InvocationHandler() {
                     private final Platform platform = Platform.get();
@@ -138,22 +182,58 @@ public final class Retrofit {
                     @Override
                     public Object invoke(Object proxy, Method method, @Nullable Object[] args)
                             throws Throwable {
-                        // 如果该方法是来自对象的方法，则遵循正常调用。
+                        ServiceMethodTable.Entry entry = dispatchTable.get(method);
+                        if (entry == null) {
+                            return invokeUnplanned(proxy, method, args);
+                        }
+                        switch (entry.kind) {
+                            case ServiceMethodTable.OBJECT:
+                                // 如果该方法是来自对象的方法，则遵循正常调用。
+                                return method.invoke(this, args);
+                            case ServiceMethodTable.DEFAULT:
+                                return invokeDefault(entry, proxy, args);
+                            default:
+                                /**
+                                 *调用HttpServiceMethod 的invoke方法，
+                                 * 调用callAdapter的adapt方法。返回一个call对象，
+                                 * 例如 Call<TokenEntity> call = HttpClient.getHttpApi().getMouthLogin(map);
+                                 * 到这一步就是得到call对象。
+                                 * call.enqueue（）
+                                 * 默认的情况下是调用ExecutorCallbackCall.enqueue()这里会调用okhttpcall对象的enqueue方法。
+                                 * 所以真正的请求还是在okhttpcall类中执行
+                                 */
+                                ServiceMethod<?> serviceMethod = entry.serviceMethod;
+                                if (serviceMethod == null) {
+                                    serviceMethod = loadServiceMethod(method);
+                                    entry.serviceMethod = serviceMethod;
+                                }
+                                return serviceMethod.invoke(args != null ? args : emptyArgs);
+                        }
+                    }
+
+                    private Object invokeDefault(ServiceMethodTable.Entry entry, Object proxy,
+                                                 @Nullable Object[] args) throws Throwable {
+                        Platform.DefaultMethodInvoker invoker = entry.defaultMethodInvoker;
+                        if (invoker == null) {
+                            invoker = platform.bindDefaultMethod(entry.method, service, proxy);
+                            if (invoker == null) {
+                                return platform.invokeDefaultMethod(entry.method, service, proxy,
+                                        args);
+                            }
+                            entry.defaultMethodInvoker = invoker;
+                        }
+                        return invoker.invoke(args != null ? args : emptyArgs);
+                    }
+
+                    /** Classifies a method the table does not know on every call. */
+                    private Object invokeUnplanned(Object proxy, Method method,
+                                                   @Nullable Object[] args) throws Throwable {
                         if (method.getDeclaringClass() == Object.class) {
                             return method.invoke(this, args);
                         }
                         if (platform.isDefaultMethod(method)) {
                             return platform.invokeDefaultMethod(method, service, proxy, args);
                         }
-                        /**
-                         *调用HttpServiceMethod 的invoke方法，
-                         * 调用callAdapter的adapt方法。返回一个call对象，
-                         * 例如 Call<TokenEntity> call = HttpClient.getHttpApi().getMouthLogin(map);
-                         * 到这一步就是得到call对象。
-                         * call.enqueue（）
-                         * 默认的情况下是调用ExecutorCallbackCall.enqueue()这里会调用okhttpcall对象的enqueue方法。
-                         * 所以真正的请求还是在okhttpcall类中执行
-                         */
                         return loadServiceMethod(method).invoke(args != null ? args : emptyArgs);
                     }
                 });
@@ -168,6 +248,97 @@ public final class Retrofit {
         }
     }
 
+    /**
+     * Parses every method of {@code services} in parallel on {@code executor}, so that their first
+     * invocations do not pay for it. The returned future completes once all of them are parsed,
+     * or fails with the first parse error; it cannot be canceled.
+     * <p>
+     * An invocation racing the warm-up waits for the method's parse in progress instead of
+     * parsing it a second time.
+     */
+    public Future<Void> warmUp(Executor executor, Class<?>... services) {
+        checkNotNull(executor, "executor == null");
+        Platform platform = Platform.get();
+        List<Method> methods = new ArrayList<>();
+        for (Class<?> service : services) {
+            Utils.validateServiceInterface(service);
+            for (Method method : service.getDeclaredMethods()) {
+                if (!platform.isDefaultMethod(method)
+                        && !Modifier.isStatic(method.getModifiers())
+                        && !serviceMethodCache.containsKey(method)) {
+                    methods.add(method);
+                }
+            }
+        }
+
+        final WarmUp warmUp = new WarmUp(methods.size());
+        for (final Method method : methods) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override public void run() {
+                        try {
+                            loadServiceMethod(method);
+                            warmUp.methodDone(null);
+                        } catch (Throwable t) {
+                            warmUp.methodDone(t);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                warmUp.methodDone(e);
+            }
+        }
+        return warmUp;
+    }
+
+    /** Completes once every method of a {@link #warmUp} has been parsed or has failed. */
+    static final class WarmUp implements Future<Void> {
+        private final CountDownLatch remaining;
+        private volatile @Nullable Throwable failure;
+
+        WarmUp(int methodCount) {
+            this.remaining = new CountDownLatch(methodCount);
+        }
+
+        void methodDone(@Nullable Throwable t) {
+            if (t != null && failure == null) {
+                failure = t;
+            }
+            remaining.countDown();
+        }
+
+        @Override public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override public boolean isCancelled() {
+            return false;
+        }
+
+        @Override public boolean isDone() {
+            return remaining.getCount() == 0;
+        }
+
+        @Override public Void get() throws InterruptedException, ExecutionException {
+            remaining.await();
+            return result();
+        }
+
+        @Override public Void get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!remaining.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private Void result() throws ExecutionException {
+            Throwable failure = this.failure;
+            if (failure != null) throw new ExecutionException(failure);
+            return null;
+        }
+    }
+
     ServiceMethod<?> loadServiceMethod(Method method) {
         /**
          *是否调用过这个方法，调用过的方法的一系列信息都会用map存起来
@@ -176,23 +347,97 @@ public final class Retrofit {
         ServiceMethod<?> result = serviceMethodCache.get(method);
         if (result != null) return result;
 
-        synchronized (serviceMethodCache) {
-            result = serviceMethodCache.get(method);
-            if (result == null) {
-                /**
-                 *解析注解，
-                 * ServiceMethod 类中通过RequestFactory.parseAnnotations获得一个RequestFactory对象，这个对象持有方法 注解 参数等信息。
-                 * HttpServiceMethod.parseAnnotations()中获取method的返回类型，选择一个CallAdapter对象，选择一个Converter转换器。然后new HttpServiceMethod将这个两个转换器
-                 * 和RequestFactory对象都传进去。
-                 * 这样就得到了ServiceMethod对象。这个对象持有了CallAdapter的具体对象 Converter转换器对象 以及包含方法注解信息的RequestFactory对象的引用
-                 * 注：默认的calladapter是通过ExecutorCallAdapterFactory的get方法获取的匿名内部类 直接new了一个callAdapter
-                 *
-                 */
-                result = ServiceMethod.parseAnnotations(this, method);
-                serviceMethodCache.put(method, result);
+        /**
+         * 每个方法对应一个 in-flight 的 FutureTask，代替原来全局的 synchronized (serviceMethodCache)。
+         * 不同方法的解析可以并行进行，同一个方法只会解析一次，其他线程等待这一次的结果。
+         */
+        FutureTask<ServiceMethod<?>> future = inFlightServiceMethods.get(method);
+        if (future == null) {
+            FutureTask<ServiceMethod<?>> newFuture = newServiceMethodTask(method);
+            future = inFlightServiceMethods.putIfAbsent(method, newFuture);
+            if (future == null) {
+                future = newFuture;
+                future.run();
+            }
+        }
+        return awaitServiceMethod(future);
+    }
+
+    private FutureTask<ServiceMethod<?>> newServiceMethodTask(final Method method) {
+        return new FutureTask<>(new Callable<ServiceMethod<?>>() {
+            @Override public ServiceMethod<?> call() {
+                try {
+                    ServiceMethod<?> result = serviceMethodCache.get(method);
+                    if (result == null) {
+                        /**
+                         *解析注解，
+                         * ServiceMethod 类中通过RequestFactory.parseAnnotations获得一个RequestFactory对象，这个对象持有方法 注解 参数等信息。
+                         * HttpServiceMethod.parseAnnotations()中获取method的返回类型，选择一个CallAdapter对象，选择一个Converter转换器。然后new HttpServiceMethod将这个两个转换器
+                         * 和RequestFactory对象都传进去。
+                         * 这样就得到了ServiceMethod对象。这个对象持有了CallAdapter的具体对象 Converter转换器对象 以及包含方法注解信息的RequestFactory对象的引用
+                         * 注：默认的calladapter是通过ExecutorCallAdapterFactory的get方法获取的匿名内部类 直接new了一个callAdapter
+                         *
+                         */
+                        CallMetricsListener metricsListener = Retrofit.this.metricsListener;
+                        if (metricsListener == null) {
+                            result = ServiceMethod.parseAnnotations(Retrofit.this, method);
+                        } else {
+                            long start = System.nanoTime();
+                            result = ServiceMethod.parseAnnotations(Retrofit.this, method);
+                            metricsListener.serviceMethodParsed(method, System.nanoTime() - start);
+                        }
+                        serviceMethodCache.put(method, result);
+                    }
+                    return result;
+                } finally {
+                    // A failed parse is not remembered so that the next call reports it again.
+                    inFlightServiceMethods.remove(method);
+                }
+            }
+        });
+    }
+
+    private static ServiceMethod<?> awaitServiceMethod(FutureTask<ServiceMethod<?>> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    if (cause instanceof Error) throw (Error) cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the compile-time generated binding for {@code service}, or null if the annotation
+     * processor did not generate one and its methods have to be parsed reflectively.
+     */
+    @Nullable GeneratedServiceBinding generatedBinding(Class<?> service) {
+        Object binding = generatedBindings.get(service);
+        if (binding == null) {
+            try {
+                Class<?> bindingClass = Class.forName(service.getName() + GeneratedServiceBinding.SUFFIX,
+                        true, service.getClassLoader());
+                binding = bindingClass.newInstance();
+            } catch (ClassNotFoundException e) {
+                binding = NO_BINDING;
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IllegalStateException("Unable to instantiate generated binding for " + service, e);
             }
+            generatedBindings.put(service, binding);
         }
-        return result;
+        return binding != NO_BINDING ? (GeneratedServiceBinding) binding : null;
     }
 
     /**
@@ -240,7 +485,10 @@ public final class Retrofit {
         checkNotNull(annotations, "annotations == null");
 
         int start = callAdapterFactories.indexOf(skipPast) + 1;
+        // 按顺序扫描，跳过声明了不处理该 raw type 的 factory
+        Class<?> rawType = Utils.getRawType(returnType);
         for (int i = start, count = callAdapterFactories.size(); i < count; i++) {
+            if (!callAdapterIndex.mayHandle(i, rawType)) continue;
             CallAdapter<?, ?> adapter = callAdapterFactories.get(i).get(returnType, annotations, this);
             if (adapter != null) {
                 return adapter;
@@ -348,7 +596,9 @@ public final class Retrofit {
         checkNotNull(annotations, "annotations == null");
 
         int start = converterFactories.indexOf(skipPast) + 1;
+        Class<?> rawType = Utils.getRawType(type);
         for (int i = start, count = converterFactories.size(); i < count; i++) {
+            if (!converterIndex.mayHandle(i, rawType)) continue;
             Converter<ResponseBody, ?> converter =
                     converterFactories.get(i).responseBodyConverter(type, annotations, this);
             if (converter != null) {
@@ -416,6 +666,8 @@ public final class Retrofit {
      * are optional.
      */
     public static final class Builder {
+        private static final long DEFAULT_MAX_ERROR_BODY_BYTES = 1024 * 1024;
+
         private final Platform platform;
         private @Nullable
         okhttp3.Call.Factory callFactory;
@@ -426,6 +678,20 @@ public final class Retrofit {
         private @Nullable
         Executor callbackExecutor;
         private boolean validateEagerly;
+        private boolean precomputeServiceMethods;
+        private boolean useGeneratedRequestFactories;
+        private boolean leanRequestBuilding;
+        private @Nullable
+        ResponseCache responseCache;
+        private long maxErrorBodyBytes = DEFAULT_MAX_ERROR_BODY_BYTES;
+        private @Nullable
+        Executor dispatchExecutor;
+        private boolean dispatchOnVirtualThreads;
+        private boolean batchCallbacks;
+        private @Nullable
+        CallMetricsListener metricsListener;
+        private @Nullable
+        RequestScheduler requestScheduler;
 
         Builder(Platform platform) {
             this.platform = platform;
@@ -456,6 +722,15 @@ public final class Retrofit {
 
             callbackExecutor = retrofit.callbackExecutor;
             validateEagerly = retrofit.validateEagerly;
+            precomputeServiceMethods = retrofit.precomputeServiceMethods;
+            useGeneratedRequestFactories = retrofit.useGeneratedRequestFactories;
+            leanRequestBuilding = retrofit.leanRequestBuilding;
+            responseCache = retrofit.responseCache;
+            maxErrorBodyBytes = retrofit.maxErrorBodyBytes;
+            dispatchExecutor = retrofit.dispatchExecutor;
+            batchCallbacks = retrofit.batchCallbacks;
+            metricsListener = retrofit.metricsListener;
+            requestScheduler = retrofit.requestScheduler;
         }
 
         /**
@@ -599,6 +874,122 @@ public final class Retrofit {
             return this;
         }
 
+        /**
+         * When calling {@link #create} on the resulting {@link Retrofit} instance, parse every method
+         * of the supplied interface up front into the proxy's dispatch table. Otherwise a method is
+         * parsed on its first invocation and kept in the table from then on. This implies
+         * {@link #validateEagerly}.
+         */
+        public Builder precomputeServiceMethods(boolean precomputeServiceMethods) {
+            this.precomputeServiceMethods = precomputeServiceMethods;
+            return this;
+        }
+
+        /**
+         * Build requests from the {@link GeneratedServiceBinding} that the {@code retrofit-compiler}
+         * annotation processor generates for a service interface, instead of parsing its annotations
+         * reflectively. Interfaces or methods without generated metadata still use reflection.
+         * <p>
+         * Note: generated metadata does not carry parameter annotations, so {@linkplain
+         * Converter.Factory#stringConverter string converters} which depend on them should not be
+         * combined with this option.
+         */
+        public Builder useGeneratedRequestFactories(boolean useGeneratedRequestFactories) {
+            this.useGeneratedRequestFactories = useGeneratedRequestFactories;
+            return this;
+        }
+
+        /**
+         * Reduce the garbage created for every request. {@code @Path} values are expanded from a
+         * relative URL split once at parse time into a reused per-thread buffer, and the
+         * {@link Invocation} tag views the call arguments instead of copying them into a new list.
+         */
+        public Builder leanRequestBuilding(boolean leanRequestBuilding) {
+            this.leanRequestBuilding = leanRequestBuilding;
+            return this;
+        }
+
+        /**
+         * The cache used by service methods annotated with {@link Cache}. Methods without the
+         * annotation, and all methods when no cache is set, always go to the network.
+         */
+        public Builder responseCache(ResponseCache responseCache) {
+            this.responseCache = checkNotNull(responseCache, "responseCache == null");
+            return this;
+        }
+
+        /**
+         * The maximum number of bytes buffered for the {@linkplain Response#errorBody() error body}
+         * of a non-2xx response. Longer error bodies are truncated. Defaults to 1 MiB.
+         */
+        public Builder maxErrorBodyBytes(long maxErrorBodyBytes) {
+            if (maxErrorBodyBytes < 0) {
+                throw new IllegalArgumentException("maxErrorBodyBytes < 0: " + maxErrorBodyBytes);
+            }
+            this.maxErrorBodyBytes = maxErrorBodyBytes;
+            return this;
+        }
+
+        /**
+         * Run {@linkplain Call#enqueue enqueued} calls as blocking requests on {@code executor}
+         * instead of on the call factory's own dispatcher. This pays off when the executor starts a
+         * cheap thread per task, see {@link #dispatchOnVirtualThreads}.
+         */
+        public Builder dispatchExecutor(Executor executor) {
+            this.dispatchExecutor = checkNotNull(executor, "executor == null");
+            this.dispatchOnVirtualThreads = false;
+            return this;
+        }
+
+        /**
+         * Run {@linkplain Call#enqueue enqueued} calls as blocking requests, each on its own virtual
+         * thread. Ignored on runtimes without virtual threads, where calls keep using the call
+         * factory's dispatcher.
+         */
+        public Builder dispatchOnVirtualThreads(boolean dispatchOnVirtualThreads) {
+            this.dispatchOnVirtualThreads = dispatchOnVirtualThreads;
+            if (dispatchOnVirtualThreads) {
+                this.dispatchExecutor = null;
+            }
+            return this;
+        }
+
+        /**
+         * Deliver callbacks which complete close together in a single task on the callback
+         * executor, instead of submitting one task per callback. Order is preserved, and a call
+         * canceled before its callback runs is still reported as canceled.
+         * <p>
+         * On Android the callbacks that complete before the main thread runs the pending batch
+         * share a single main-looper message. The number of messages saved is available from
+         * {@link BatchingCallbackExecutor#savedCount()} on {@link Retrofit#callbackExecutor()}.
+         *
+         * @see BatchingCallbackExecutor
+         */
+        public Builder batchCallbacks(boolean batchCallbacks) {
+            this.batchCallbacks = batchCallbacks;
+            return this;
+        }
+
+        /**
+         * Report parse, request building, network and conversion times, response sizes and
+         * outcomes of every call to {@code listener}, e.g. a {@link CallMetricsCollector}. No
+         * timings are taken when no listener is set.
+         */
+        public Builder callMetricsListener(CallMetricsListener listener) {
+            this.metricsListener = checkNotNull(listener, "listener == null");
+            return this;
+        }
+
+        /**
+         * Send {@linkplain Call#enqueue enqueued} calls through {@code scheduler}, which orders them
+         * by {@link Priority} and limits how many are in flight overall and per host. Synchronous
+         * {@link Call#execute()} calls are not scheduled.
+         */
+        public Builder requestScheduler(RequestScheduler scheduler) {
+            this.requestScheduler = checkNotNull(scheduler, "scheduler == null");
+            return this;
+        }
+
         /**
          * Create the {@link Retrofit} instance using the configured values.
          * <p>
@@ -619,6 +1010,15 @@ public final class Retrofit {
             if (callbackExecutor == null) {
                 callbackExecutor = platform.defaultCallbackExecutor();
             }
+            if (batchCallbacks && callbackExecutor != null
+                    && !(callbackExecutor instanceof BatchingCallbackExecutor)) {
+                callbackExecutor = platform.batchingCallbackExecutor(callbackExecutor);
+            }
+
+            Executor dispatchExecutor = this.dispatchExecutor;
+            if (dispatchExecutor == null && dispatchOnVirtualThreads) {
+                dispatchExecutor = platform.virtualThreadExecutor();
+            }
 
             // Make a defensive copy of the adapters and add the default Call adapter.
             List<CallAdapter.Factory> callAdapterFactories = new ArrayList<>(this.callAdapterFactories);
@@ -635,7 +1035,10 @@ public final class Retrofit {
             converterFactories.addAll(platform.defaultConverterFactories());
 
             return new Retrofit(callFactory, baseUrl, unmodifiableList(converterFactories),
-                    unmodifiableList(callAdapterFactories), callbackExecutor, validateEagerly);
+                    unmodifiableList(callAdapterFactories), callbackExecutor, validateEagerly,
+                    precomputeServiceMethods, useGeneratedRequestFactories, leanRequestBuilding,
+                    responseCache, maxErrorBodyBytes, dispatchExecutor, batchCallbacks,
+                    metricsListener, requestScheduler);
         }
     }
 }
@@ -8,7 +8,18 @@ import java.lang.reflect.Type;
  */
 abstract class ServiceMethod<T> {
     static <T> ServiceMethod<T> parseAnnotations(Retrofit retrofit, Method method) {
-        RequestFactory requestFactory = RequestFactory.parseAnnotations(retrofit, method);
+        // 如果有编译期生成的请求描述，直接用它构建RequestFactory，省去反射解析注解
+        RequestFactory requestFactory = null;
+        if (retrofit.useGeneratedRequestFactories) {
+            GeneratedServiceBinding binding = retrofit.generatedBinding(method.getDeclaringClass());
+            GeneratedRequestSpec spec = binding != null ? binding.requestSpec(method) : null;
+            if (spec != null) {
+                requestFactory = RequestFactory.fromGenerated(retrofit, method, spec);
+            }
+        }
+        if (requestFactory == null) {
+            requestFactory = RequestFactory.parseAnnotations(retrofit, method);
+        }
 
         Type returnType = method.getGenericReturnType();//表示方法的正式返回类型
         if (Utils.hasUnresolvableType(returnType)) {
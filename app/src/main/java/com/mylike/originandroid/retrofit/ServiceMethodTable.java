@@ -0,0 +1,104 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The dispatch plan of one proxy built by {@link Retrofit#create(Class)}: every method the proxy
+ * can receive, classified once as an {@link Object} method, a default method or a service method.
+ * <p>
+ * Slots are addressed by an open-addressing table keyed on the method name's cached hash code, so
+ * a lookup from the proxy's {@code InvocationHandler} never hashes a {@link Method}, never
+ * allocates and never takes a lock. The proxy may hand us a different {@link Method} instance than
+ * {@link Class#getDeclaredMethods()} returned, so a slot matches by identity first and then by
+ * {@link Method#equals(Object)}.
+ * <p>
+ * Parsed service methods and bound default method invokers are kept in their entry after first
+ * use, or up front for service methods when {@code precompute} is set.
+ */
+final class ServiceMethodTable {
+    static final int OBJECT = 0;
+    static final int DEFAULT = 1;
+    static final int SERVICE = 2;
+
+    static ServiceMethodTable build(Retrofit retrofit, Class<?> service, boolean precompute) {
+        Platform platform = Platform.get();
+        List<Entry> entries = new ArrayList<>();
+        // The proxy routes these three Object methods through the handler as well.
+        try {
+            entries.add(new Entry(Object.class.getMethod("equals", Object.class), OBJECT));
+            entries.add(new Entry(Object.class.getMethod("hashCode"), OBJECT));
+            entries.add(new Entry(Object.class.getMethod("toString"), OBJECT));
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+        for (Method method : service.getDeclaredMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (platform.isDefaultMethod(method)) {
+                entries.add(new Entry(method, DEFAULT));
+                continue;
+            }
+            Entry entry = new Entry(method, SERVICE);
+            if (precompute) {
+                //解析注解，与 loadServiceMethod 共用同一份缓存和 in-flight 结果
+                entry.serviceMethod = retrofit.loadServiceMethod(method);
+            }
+            entries.add(entry);
+        }
+
+        int capacity = Integer.highestOneBit(entries.size() * 2 - 1) << 1;
+        Entry[] slots = new Entry[capacity];
+        int mask = capacity - 1;
+        for (Entry entry : entries) {
+            int slot = entry.method.getName().hashCode() & mask;
+            while (slots[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry;
+        }
+        return new ServiceMethodTable(slots);
+    }
+
+    private final Entry[] slots;
+    private final int mask;
+
+    private ServiceMethodTable(Entry[] slots) {
+        this.slots = slots;
+        this.mask = slots.length - 1;
+    }
+
+    /** Returns the entry for {@code method}, or null if it has no slot. */
+    @Nullable Entry get(Method method) {
+        int slot = method.getName().hashCode() & mask;
+        Entry entry;
+        while ((entry = slots[slot]) != null) {
+            Method key = entry.method;
+            if (key == method || key.equals(method)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    static final class Entry {
+        final Method method;
+        /** One of {@link #OBJECT}, {@link #DEFAULT} or {@link #SERVICE}. */
+        final int kind;
+        /** Set for {@link #SERVICE} entries once parsed. */
+        volatile @Nullable ServiceMethod<?> serviceMethod;
+        /** Set for {@link #DEFAULT} entries once bound to the proxy. */
+        volatile @Nullable Platform.DefaultMethodInvoker defaultMethodInvoker;
+
+        Entry(Method method, int kind) {
+            this.method = method;
+            this.kind = kind;
+        }
+    }
+}
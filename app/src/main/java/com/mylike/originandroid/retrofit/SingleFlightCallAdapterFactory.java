@@ -0,0 +1,353 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+/**
+ * A {@linkplain CallAdapter.Factory call adapter factory} which coalesces identical in-flight
+ * {@code GET} requests. When a call is {@linkplain Call#enqueue enqueued} while another call to the
+ * same service method with the same URL and headers is still pending, it attaches to that pending
+ * call instead of sending its own request, and receives the same converted response.
+ * <p>
+ * The first caller gets the converted body as is. Every other caller gets the body passed through
+ * the {@link BodySharing} strategy, which by default hands out the same instance. Error bodies are
+ * read once and copied for each caller.
+ * <p>
+ * Canceling one caller only detaches it. The underlying {@code okhttp3.Call} is canceled when the
+ * last attached caller cancels. Synchronous {@link Call#execute()} is never coalesced.
+ * <p>
+ * Install it before other factories; it delegates to the next factory able to adapt the return
+ * type, so callbacks are still delivered on the callback executor.
+ * <pre><code>
+ * Retrofit retrofit = new Retrofit.Builder()
+ *     .baseUrl("https://api.example.com/")
+ *     .addCallAdapterFactory(SingleFlightCallAdapterFactory.create())
+ *     .build();
+ * </code></pre>
+ */
+public final class SingleFlightCallAdapterFactory extends CallAdapter.Factory
+        implements HandlesRawTypes {
+    /** Decides how a converted body is handed to callers other than the first one. */
+    public interface BodySharing {
+        /** Hands out {@code body} itself. Only safe for immutable bodies. */
+        BodySharing SAME_INSTANCE = new BodySharing() {
+            @Override public <T> T share(T body) {
+                return body;
+            }
+        };
+
+        /** Returns the instance to give to one more caller, e.g. {@code body} or a copy of it. */
+        <T> T share(T body);
+    }
+
+    public static SingleFlightCallAdapterFactory create() {
+        return new SingleFlightCallAdapterFactory(BodySharing.SAME_INSTANCE);
+    }
+
+    public static SingleFlightCallAdapterFactory create(BodySharing sharing) {
+        if (sharing == null) throw new NullPointerException("sharing == null");
+        return new SingleFlightCallAdapterFactory(sharing);
+    }
+
+    private final BodySharing sharing;
+
+    private SingleFlightCallAdapterFactory(BodySharing sharing) {
+        this.sharing = sharing;
+    }
+
+    @Override public Set<Class<?>> handledRawTypes() {
+        return Collections.<Class<?>>singleton(Call.class);
+    }
+
+    @Override public @Nullable CallAdapter<?, ?> get(Type returnType, Annotation[] annotations,
+                                                      Retrofit retrofit) {
+        if (getRawType(returnType) != Call.class) {
+            return null;
+        }
+        //noinspection unchecked
+        final CallAdapter<Object, Object> delegate =
+                (CallAdapter<Object, Object>) retrofit.nextCallAdapter(this, returnType, annotations);
+        // 每个 service method 一个 FlightGroup，同一个 key 下的响应类型一定相同
+        final FlightGroup<Object> group = new FlightGroup<>(sharing);
+        return new CallAdapter<Object, Object>() {
+            @Override public Type responseType() {
+                return delegate.responseType();
+            }
+
+            @Override public Object adapt(Call<Object> call) {
+                return delegate.adapt(new SingleFlightCall<>(call, group));
+            }
+        };
+    }
+
+    static final class FlightGroup<T> {
+        final ConcurrentHashMap<String, Flight<T>> flights = new ConcurrentHashMap<>();
+        final BodySharing sharing;
+
+        FlightGroup(BodySharing sharing) {
+            this.sharing = sharing;
+        }
+
+        void enqueue(SingleFlightCall<T> call, Callback<T> callback) {
+            String key;
+            try {
+                okhttp3.Request request = call.delegate.request();
+                if (!"GET".equals(request.method())) {
+                    call.delegate.enqueue(new ForwardingCallback<>(call, callback));
+                    return;
+                }
+                key = request.url() + "\n" + request.headers();
+            } catch (RuntimeException e) {
+                // Let the delegate report the creation failure through the callback as usual.
+                call.delegate.enqueue(new ForwardingCallback<>(call, callback));
+                return;
+            }
+
+            while (true) {
+                Flight<T> flight = flights.get(key);
+                if (flight == null) {
+                    // Attach before publishing, so nobody joins a flight whose leader was canceled.
+                    Flight<T> newFlight = new Flight<>(this, key, call.delegate);
+                    if (newFlight.attach(call, callback) == Flight.CANCELED) {
+                        callback.onFailure(call, new IOException("Canceled"));
+                        return;
+                    }
+                    flight = flights.putIfAbsent(key, newFlight);
+                    if (flight == null) {
+                        newFlight.leader.enqueue(newFlight);
+                        return;
+                    }
+                    // Lost the race; the unpublished flight is dropped and never sent.
+                }
+                int attached = flight.attach(call, callback);
+                if (attached == Flight.ATTACHED) {
+                    return;
+                }
+                if (attached == Flight.CANCELED) {
+                    callback.onFailure(call, new IOException("Canceled"));
+                    return;
+                }
+                // The flight completed meanwhile; it removes itself, so start over.
+                flights.remove(key, flight);
+            }
+        }
+    }
+
+    /** One network request and the callers waiting for it. */
+    static final class Flight<T> implements Callback<T> {
+        static final int ATTACHED = 0;
+        /** The flight already completed and cannot take more callers. */
+        static final int COMPLETED = 1;
+        /** The caller was canceled before it could attach. */
+        static final int CANCELED = 2;
+
+        final FlightGroup<T> group;
+        final String key;
+        final Call<T> leader;
+        // Guarded by this.
+        private final List<SingleFlightCall<T>> calls = new ArrayList<>();
+        private final List<Callback<T>> callbacks = new ArrayList<>();
+        private int activeCount;
+        private boolean completed;
+
+        Flight(FlightGroup<T> group, String key, Call<T> leader) {
+            this.group = group;
+            this.key = key;
+            this.leader = leader;
+        }
+
+        synchronized int attach(SingleFlightCall<T> call, Callback<T> callback) {
+            if (completed) return COMPLETED;
+            // Checked under the call's lock too, so that a racing cancel() either finds this
+            // flight to detach from or is seen here.
+            synchronized (call) {
+                if (call.isCanceled()) return CANCELED;
+                call.flight = this;
+            }
+            calls.add(call);
+            callbacks.add(callback);
+            activeCount++;
+            return ATTACHED;
+        }
+
+        void detach() {
+            boolean cancelLeader;
+            synchronized (this) {
+                cancelLeader = !completed && --activeCount == 0;
+            }
+            if (cancelLeader) {
+                leader.cancel();
+            }
+        }
+
+        /** Marks this flight completed; the attached callers can be read without the lock. */
+        private void complete() {
+            group.flights.remove(key, this);
+            synchronized (this) {
+                completed = true;
+            }
+        }
+
+        @Override public void onResponse(Call<T> call, Response<T> response) {
+            complete();
+            List<Response<T>> responses;
+            try {
+                responses = share(response, calls.size());
+            } catch (IOException e) {
+                onFailure(call, e);
+                return;
+            }
+            // One throwing callback must not keep the others from hearing back.
+            Throwable thrown = null;
+            for (int i = 0, size = calls.size(); i < size; i++) {
+                SingleFlightCall<T> owner = calls.get(i);
+                try {
+                    if (owner.isCanceled()) {
+                        callbacks.get(i).onFailure(owner, new IOException("Canceled"));
+                    } else {
+                        callbacks.get(i).onResponse(owner, responses.get(i));
+                    }
+                } catch (Throwable e) {
+                    if (thrown == null) thrown = e;
+                }
+            }
+            rethrow(thrown);
+        }
+
+        @Override public void onFailure(Call<T> call, Throwable t) {
+            complete();
+            Throwable thrown = null;
+            for (int i = 0, size = calls.size(); i < size; i++) {
+                try {
+                    callbacks.get(i).onFailure(calls.get(i), t);
+                } catch (Throwable e) {
+                    if (thrown == null) thrown = e;
+                }
+            }
+            rethrow(thrown);
+        }
+
+        private static void rethrow(@Nullable Throwable t) {
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+            if (t != null) throw new RuntimeException(t);
+        }
+
+        /** Prepares one response per caller before any of them can touch the body. */
+        private List<Response<T>> share(Response<T> response, int count) throws IOException {
+            List<Response<T>> responses = new ArrayList<>(count);
+            if (response.isSuccessful()) {
+                T body = response.body();
+                responses.add(response);
+                for (int i = 1; i < count; i++) {
+                    responses.add(Response.success(
+                            body != null ? group.sharing.share(body) : null, response.raw()));
+                }
+            } else {
+                ResponseBody errorBody = response.errorBody();
+                MediaType contentType = errorBody != null ? errorBody.contentType() : null;
+                byte[] bytes = errorBody != null ? errorBody.bytes() : new byte[0];
+                for (int i = 0; i < count; i++) {
+                    responses.add(Response.<T>error(ResponseBody.create(contentType, bytes),
+                            response.raw()));
+                }
+            }
+            return responses;
+        }
+    }
+
+    static final class SingleFlightCall<T> implements Call<T> {
+        final Call<T> delegate;
+        final FlightGroup<T> group;
+        volatile @Nullable Flight<T> flight;
+        private volatile boolean executed;
+        private volatile boolean canceled;
+
+        SingleFlightCall(Call<T> delegate, FlightGroup<T> group) {
+            this.delegate = delegate;
+            this.group = group;
+        }
+
+        @Override public void enqueue(Callback<T> callback) {
+            Utils.checkNotNull(callback, "callback == null");
+            synchronized (this) {
+                if (executed) throw new IllegalStateException("Already executed.");
+                executed = true;
+            }
+            if (canceled) {
+                callback.onFailure(this, new IOException("Canceled"));
+                return;
+            }
+            group.enqueue(this, callback);
+        }
+
+        @Override public Response<T> execute() throws IOException {
+            synchronized (this) {
+                if (executed) throw new IllegalStateException("Already executed.");
+                executed = true;
+            }
+            return delegate.execute();
+        }
+
+        @Override public boolean isExecuted() {
+            return executed;
+        }
+
+        @Override public void cancel() {
+            Flight<T> flight;
+            synchronized (this) {
+                if (canceled) return;
+                canceled = true;
+                flight = this.flight;
+            }
+            if (flight != null) {
+                flight.detach();
+            } else {
+                delegate.cancel();
+            }
+        }
+
+        @Override public boolean isCanceled() {
+            return canceled;
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone") // Performing deep clone.
+        @Override public Call<T> clone() {
+            return new SingleFlightCall<>(delegate.clone(), group);
+        }
+
+        @Override public Request request() {
+            return delegate.request();
+        }
+    }
+
+    /** Reports the delegate's outcome as the outcome of {@code owner}. */
+    static final class ForwardingCallback<T> implements Callback<T> {
+        private final Call<T> owner;
+        private final Callback<T> callback;
+
+        ForwardingCallback(Call<T> owner, Callback<T> callback) {
+            this.owner = owner;
+            this.callback = callback;
+        }
+
+        @Override public void onResponse(Call<T> call, Response<T> response) {
+            callback.onResponse(owner, response);
+        }
+
+        @Override public void onFailure(Call<T> call, Throwable t) {
+            callback.onFailure(owner, t);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okio.BufferedSource;
+
+/**
+ * Decodes a response body one element at a time, straight from its {@link BufferedSource}, so that
+ * large list responses never have to be held in memory as a whole. Used through
+ * {@link StreamingConverterFactory} for service methods returning {@code Call<ElementStream<E>>}.
+ * <p>
+ * For example, a converter for a JSON array would consume the opening bracket on its first call
+ * and then return one decoded element per call.
+ */
+public interface StreamingConverter<E> {
+    /** Reads the next element from {@code source}, or returns null once the body is exhausted. */
+    @Nullable E read(BufferedSource source) throws IOException;
+
+    /** Creates {@link StreamingConverter} instances based on the element type. */
+    abstract class Factory {
+        /**
+         * Returns a streaming converter for elements of {@code elementType}, or null if it cannot
+         * be handled by this factory.
+         */
+        public abstract @Nullable StreamingConverter<?> get(Type elementType,
+                                                            Annotation[] annotations,
+                                                            Retrofit retrofit);
+    }
+}
@@ -0,0 +1,63 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Set;
+
+import okhttp3.ResponseBody;
+
+/**
+ * A {@linkplain Converter.Factory converter factory} for {@link ElementStream} response types. The
+ * elements are decoded by the {@link StreamingConverter} that the wrapped
+ * {@link StreamingConverter.Factory} returns for the element type.
+ * <p>
+ * Unlike other converters the returned converter does not read or close the body: the
+ * {@link ElementStream} reads it lazily and closes it when done.
+ */
+public final class StreamingConverterFactory extends Converter.Factory
+        implements HandlesRawTypes {
+    public static StreamingConverterFactory create(StreamingConverter.Factory factory) {
+        if (factory == null) throw new NullPointerException("factory == null");
+        return new StreamingConverterFactory(factory);
+    }
+
+    private final StreamingConverter.Factory factory;
+
+    private StreamingConverterFactory(StreamingConverter.Factory factory) {
+        this.factory = factory;
+    }
+
+    @Override public Set<Class<?>> handledRawTypes() {
+        return Collections.<Class<?>>singleton(ElementStream.class);
+    }
+
+    @Override public @Nullable Converter<ResponseBody, ?> responseBodyConverter(Type type,
+            Annotation[] annotations, Retrofit retrofit) {
+        if (getRawType(type) != ElementStream.class) {
+            return null;
+        }
+        if (!(type instanceof ParameterizedType)) {
+            throw new IllegalStateException(
+                    "ElementStream return type must be parameterized as ElementStream<Foo>");
+        }
+        Type elementType = getParameterUpperBound(0, (ParameterizedType) type);
+        final StreamingConverter<?> converter = factory.get(elementType, annotations, retrofit);
+        if (converter == null) {
+            return null;
+        }
+        return new Converter<ResponseBody, ElementStream<?>>() {
+            @Override public ElementStream<?> convert(ResponseBody value) throws IOException {
+                return newStream(value, converter);
+            }
+        };
+    }
+
+    private static <E> ElementStream<E> newStream(ResponseBody body, StreamingConverter<E> converter) {
+        return new ElementStream<>(body, converter);
+    }
+}
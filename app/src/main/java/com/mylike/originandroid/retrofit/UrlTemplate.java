@@ -0,0 +1,210 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A relative URL split at parse time into literal segments and {@code @Path} placeholders, so that
+ * {@link RequestFactory#create(Object[])} can expand it in one pass into a reused per-thread
+ * {@link StringBuilder} instead of running one {@link String#replace} per path parameter.
+ * <p>
+ * Expansion percent-encodes values like {@code RequestBuilder.addPathParam} does, and like it
+ * rejects values that would make the expanded path climb out of the template through a {@code .}
+ * or {@code ..} segment.
+ */
+final class UrlTemplate {
+    private static final Pattern PARAM_URL_REGEX = Pattern.compile("\\{([a-zA-Z][a-zA-Z0-9_-]*)\\}");
+    private static final char[] HEX_DIGITS =
+            {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+    private static final String PATH_SEGMENT_ALWAYS_ENCODE_SET = " \"<>^`{}|\\?#";
+    /** Same as {@code RequestBuilder.PATH_TRAVERSAL}. */
+    private static final Pattern PATH_TRAVERSAL = Pattern.compile("(.*/)?(\\.|%2e|%2E){1,2}(/.*)?");
+    private static final Pattern DOT_SEGMENT = Pattern.compile("(\\.|%2e|%2E){1,2}");
+    /** Builders grown beyond this are dropped rather than pinned to the thread. */
+    private static final int MAX_RETAINED_CAPACITY = 1024;
+
+    private static final ThreadLocal<StringBuilder> URL_BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override protected StringBuilder initialValue() {
+            return new StringBuilder(128);
+        }
+    };
+
+    /**
+     * Splits {@code relativeUrl} around every placeholder whose name is declared by a {@code @Path}
+     * parameter. Returns null if there is none.
+     *
+     * @param pathNames the {@code @Path} name of each method parameter, or null for non-path ones
+     */
+    static @Nullable UrlTemplate parse(String relativeUrl, String[] pathNames,
+                                       Converter<?, String>[] pathConverters, boolean[] pathEncoded) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> parameters = new ArrayList<>();
+        Matcher m = PARAM_URL_REGEX.matcher(relativeUrl);
+        int literalStart = 0;
+        while (m.find()) {
+            int p = indexOf(pathNames, m.group(1));
+            if (p == -1) continue; // Not bound by any @Path, keep it verbatim like RequestBuilder.
+            literals.add(relativeUrl.substring(literalStart, m.start()));
+            parameters.add(p);
+            literalStart = m.end();
+        }
+        if (parameters.isEmpty()) {
+            return null;
+        }
+        literals.add(relativeUrl.substring(literalStart));
+
+        int[] parameterIndexes = new int[parameters.size()];
+        for (int i = 0; i < parameterIndexes.length; i++) {
+            parameterIndexes[i] = parameters.get(i);
+        }
+        boolean[] expands = new boolean[pathNames.length];
+        for (int p = 0; p < pathNames.length; p++) {
+            expands[p] = pathNames[p] != null;
+        }
+        return new UrlTemplate(literals.toArray(new String[0]), parameterIndexes, expands, pathNames,
+                pathConverters, pathEncoded);
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int p = 0; p < names.length; p++) {
+            if (name.equals(names[p])) return p;
+        }
+        return -1;
+    }
+
+    /** {@code literals.length == parameterIndexes.length + 1}. */
+    private final String[] literals;
+    private final int[] parameterIndexes;
+    private final boolean[] expands;
+    private final String[] pathNames;
+    private final Converter<?, String>[] pathConverters;
+    private final boolean[] pathEncoded;
+
+    private UrlTemplate(String[] literals, int[] parameterIndexes, boolean[] expands,
+                        String[] pathNames, Converter<?, String>[] pathConverters,
+                        boolean[] pathEncoded) {
+        this.literals = literals;
+        this.parameterIndexes = parameterIndexes;
+        this.expands = expands;
+        this.pathNames = pathNames;
+        this.pathConverters = pathConverters;
+        this.pathEncoded = pathEncoded;
+    }
+
+    /** True if parameter {@code p} is consumed by {@link #expand} and needs no handler. */
+    boolean expands(int p) {
+        return expands[p];
+    }
+
+    String expand(Object[] args) throws IOException {
+        @SuppressWarnings("unchecked") // It is an error to invoke a method with the wrong arg types.
+                Converter<Object, String>[] converters = (Converter<Object, String>[]) pathConverters;
+
+        StringBuilder out = URL_BUILDER.get();
+        out.setLength(0);
+        try {
+            out.append(literals[0]);
+            for (int i = 0; i < parameterIndexes.length; i++) {
+                int p = parameterIndexes[i];
+                Object value = args[p];
+                if (value == null) {
+                    throw new IllegalArgumentException(
+                            "Path parameter \"" + pathNames[p] + "\" value must not be null.");
+                }
+                canonicalizeForPath(out, converters[p].convert(value), pathEncoded[p]);
+                out.append(literals[i + 1]);
+            }
+            String url = out.toString();
+            if (PATH_TRAVERSAL.matcher(url).matches()) {
+                throw new IllegalArgumentException(
+                        "@Path parameters shouldn't perform path traversal ('.' or '..'): "
+                                + traversingValue(converters, args));
+            }
+            return url;
+        } finally {
+            if (out.capacity() > MAX_RETAINED_CAPACITY) {
+                URL_BUILDER.remove();
+            }
+        }
+    }
+
+    /**
+     * Finds the converted value that put a {@code .} or {@code ..} segment into the expanded URL,
+     * for the error message. Only called on that error path, so it simply expands again.
+     */
+    private String traversingValue(Converter<Object, String>[] converters, Object[] args)
+            throws IOException {
+        StringBuilder out = new StringBuilder(literals[0]);
+        String[] values = new String[parameterIndexes.length];
+        int[] starts = new int[parameterIndexes.length];
+        int[] ends = new int[parameterIndexes.length];
+        for (int i = 0; i < parameterIndexes.length; i++) {
+            int p = parameterIndexes[i];
+            values[i] = converters[p].convert(args[p]);
+            starts[i] = out.length();
+            canonicalizeForPath(out, values[i], pathEncoded[p]);
+            ends[i] = out.length();
+            out.append(literals[i + 1]);
+        }
+        int segmentStart = 0;
+        for (int j = 0; j <= out.length(); j++) {
+            if (j < out.length() && out.charAt(j) != '/') continue;
+            if (DOT_SEGMENT.matcher(out.subSequence(segmentStart, j)).matches()) {
+                for (int i = 0; i < values.length; i++) {
+                    if (starts[i] < j && ends[i] > segmentStart) return values[i];
+                }
+            }
+            segmentStart = j + 1;
+        }
+        return values[0]; // The template itself has the dot segment; blame the first value.
+    }
+
+    private static void canonicalizeForPath(StringBuilder out, String input, boolean alreadyEncoded) {
+        int codePoint;
+        for (int i = 0, limit = input.length(); i < limit; i += Character.charCount(codePoint)) {
+            codePoint = input.codePointAt(i);
+            if (alreadyEncoded
+                    && (codePoint == '\t' || codePoint == '\n' || codePoint == '\f' || codePoint == '\r')) {
+                // Skip this character.
+            } else if (codePoint < 0x20 || codePoint >= 0x7f
+                    || PATH_SEGMENT_ALWAYS_ENCODE_SET.indexOf(codePoint) != -1
+                    || (!alreadyEncoded && (codePoint == '/' || codePoint == '%'))) {
+                percentEncode(out, codePoint);
+            } else {
+                out.appendCodePoint(codePoint);
+            }
+        }
+    }
+
+    /** Appends the UTF-8 bytes of {@code codePoint} as {@code %XX} escapes. */
+    private static void percentEncode(StringBuilder out, int codePoint) {
+        if (codePoint < 0x80) {
+            appendByte(out, codePoint);
+        } else if (codePoint < 0x800) {
+            appendByte(out, 0xc0 | (codePoint >> 6));
+            appendByte(out, 0x80 | (codePoint & 0x3f));
+        } else if (codePoint < 0x10000) {
+            if (codePoint >= 0xd800 && codePoint <= 0xdfff) {
+                appendByte(out, '?'); // Lone surrogate, same replacement as okio's writeUtf8CodePoint.
+                return;
+            }
+            appendByte(out, 0xe0 | (codePoint >> 12));
+            appendByte(out, 0x80 | ((codePoint >> 6) & 0x3f));
+            appendByte(out, 0x80 | (codePoint & 0x3f));
+        } else {
+            appendByte(out, 0xf0 | (codePoint >> 18));
+            appendByte(out, 0x80 | ((codePoint >> 12) & 0x3f));
+            appendByte(out, 0x80 | ((codePoint >> 6) & 0x3f));
+            appendByte(out, 0x80 | (codePoint & 0x3f));
+        }
+    }
+
+    private static void appendByte(StringBuilder out, int b) {
+        out.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+}
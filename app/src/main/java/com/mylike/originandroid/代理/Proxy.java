@@ -4,6 +4,7 @@ package com.mylike.originandroid.代理;
 import dalvik.annotation.optimization.FastNative;
 
 import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
@@ -27,6 +28,7 @@ import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import libcore.util.EmptyArray;
 import sun.reflect.CallerSensitive;
@@ -230,8 +232,9 @@ public class Proxy implements java.io.Serializable {
     /**
      * a cache of proxy classes
      */
-    private static final WeakCache<ClassLoader, Class<?>[], Class<?>>
-            proxyClassCache = new WeakCache<>(new KeyFactory(), new ProxyClassFactory());
+    private static final ProxyClassCache
+            proxyClassCache = new ProxyClassCache(new KeyFactory(), new ProxyClassFactory(),
+            new ConstructorFactory());
 
     /**
      * the invocation handler for this proxy instance.
@@ -417,6 +420,19 @@ public class Proxy implements java.io.Serializable {
         return proxyClassCache.get(loader, interfaces);
     }
 
+    /**
+     * Look up the constructor of the proxy class for the given loader and
+     * interfaces, generating the proxy class if needed. The constructor is
+     * cached next to the proxy class, see {@link ConstructorFactory}.
+     */
+    private static Constructor<?> getProxyConstructor0(ClassLoader loader,
+                                                       Class<?>... interfaces) {
+        if (interfaces.length > 65535) {
+            throw new IllegalArgumentException("interface limit exceeded");
+        }
+        return proxyClassCache.getConstructor(loader, interfaces);
+    }
+
     /*
      * a key used for proxy class with 0 implemented interfaces
      */
@@ -429,6 +445,8 @@ public class Proxy implements java.io.Serializable {
 
     /*
      * a key used for proxy class with 1 implemented interface
+     * (ProxyClassCache looks single interfaces up by identity and no longer
+     * asks KeyFactory for one; kept for callers of KeyFactory)
      */
     private static final class Key1 extends WeakReference<Class<?>> {
         private final int hash;
@@ -551,6 +569,27 @@ public class Proxy implements java.io.Serializable {
         }
     }
 
+    /**
+     * A function that maps a proxy class to its constructor taking an
+     * {@code InvocationHandler}, made accessible if the proxy class is
+     * non-public.
+     */
+    private static final class ConstructorFactory
+            implements Function<Class<?>, Constructor<?>> {
+        @Override
+        public Constructor<?> apply(Class<?> cl) {
+            try {
+                final Constructor<?> cons = cl.getConstructor(constructorParams);
+                if (!Modifier.isPublic(cl.getModifiers())) {
+                    cons.setAccessible(true);
+                }
+                return cons;
+            } catch (NoSuchMethodException e) {
+                throw new InternalError(e.toString(), e);
+            }
+        }
+    }
+
     // BEGIN Android-changed: How proxies are generated.
     /**
      * Orders methods by their name, parameters, return type and inheritance relationship.
@@ -656,13 +695,8 @@ public class Proxy implements java.io.Serializable {
             {
                 // Android-changed: Generate the proxy directly instead of calling
                 // through to ProxyGenerator.
-                List<Method> methods = getMethods(interfaces);
-                Collections.sort(methods, ORDER_BY_SIGNATURE_AND_SUBTYPE);
-                validateReturnTypes(methods);
-                List<Class<?>[]> exceptions = deduplicateAndGetExceptions(methods);
-
-                Method[] methodsArray = methods.toArray(new Method[methods.size()]);
-                Class<?>[][] exceptionsArray = exceptions.toArray(new Class<?>[exceptions.size()][]);
+                // 每个接口的方法表只计算一次，组合代理直接归并各接口已排好序的表
+                MethodTable table = MethodTable.forProxy(interfaces);
 
                 /*
                  * Choose a name for the proxy class to generate.
@@ -670,36 +704,10 @@ public class Proxy implements java.io.Serializable {
                 long num = nextUniqueNumber.getAndIncrement();
                 String proxyName = proxyPkg + proxyClassNamePrefix + num;
 
-                return generateProxy(proxyName, interfaces, loader, methodsArray,
-                        exceptionsArray);
-            }
-        }
-    }
-
-    /**
-     * Remove methods that have the same name, parameters and return type. This
-     * computes the exceptions of each method; this is the intersection of the
-     * exceptions of equivalent methods.
-     *
-     * @param methods the methods to find exceptions for, ordered by name and
-     *                signature.
-     */
-    private static List<Class<?>[]> deduplicateAndGetExceptions(List<Method> methods) {
-        List<Class<?>[]> exceptions = new ArrayList<Class<?>[]>(methods.size());
-
-        for (int i = 0; i < methods.size(); ) {
-            Method method = methods.get(i);
-            Class<?>[] exceptionTypes = method.getExceptionTypes();
-
-            if (i > 0 && Method.ORDER_BY_SIGNATURE.compare(method, methods.get(i - 1)) == 0) {
-                exceptions.set(i - 1, intersectExceptions(exceptions.get(i - 1), exceptionTypes));
-                methods.remove(i);
-            } else {
-                exceptions.add(exceptionTypes);
-                i++;
+                return generateProxy(proxyName, interfaces, loader, table.methods,
+                        table.exceptions);
             }
         }
-        return exceptions;
     }
 
     /**
@@ -754,28 +762,159 @@ public class Proxy implements java.io.Serializable {
         }
     }
 
-    private static List<Method> getMethods(Class<?>[] interfaces) {
-        List<Method> result = new ArrayList<Method>();
-        try {
-            result.add(Object.class.getMethod("equals", Object.class));
-            result.add(Object.class.getMethod("hashCode", EmptyArray.CLASS));
-            result.add(Object.class.getMethod("toString", EmptyArray.CLASS));
-        } catch (NoSuchMethodException e) {
-            throw new AssertionError();
+    /**
+     * Precomputes the method tables of the given interfaces, so that proxy
+     * classes implementing them are generated faster later on. Meant to be
+     * called off the main thread early during startup. The tables are made of
+     * {@link Method} objects, which only exist at runtime, so they cannot be
+     * generated at build time the way the retrofit-compiler processor
+     * generates code.
+     *
+     * <p>A table keeps its interface and that interface's class loader
+     * reachable until the table's soft reference is cleared, which happens
+     * only under memory pressure.
+     *
+     * @hide
+     */
+    public static void precomputeMethodTables(Class<?>... interfaces) {
+        for (Class<?> intf : interfaces) {
+            if (!intf.isInterface()) {
+                throw new IllegalArgumentException(intf.getName() + " is not an interface");
+            }
+            MethodTable.forInterface(intf);
         }
-
-        getMethodsRecursive(interfaces, result);
-        return result;
     }
 
     /**
-     * Fills {@code proxiedMethods} with the methods of {@code interfaces} and
-     * the interfaces they extend. May contain duplicates.
+     * The methods of a proxy class or of an interface and the interfaces it
+     * extends: ordered by {@link #ORDER_BY_SIGNATURE_AND_SUBTYPE}, with
+     * methods that have the same name, parameters and return type merged into
+     * the first of them, and the exceptions of each method being the
+     * intersection of the exceptions of the methods merged into it.
+     *
+     * <p>Tables are immutable. The table of an interface is computed once,
+     * from the tables of the interfaces it extends and its own declared
+     * methods, and reused by every proxy class implementing it; the table of
+     * a proxy class is a merge of the tables of its interfaces.
      */
-    private static void getMethodsRecursive(Class<?>[] interfaces, List<Method> methods) {
-        for (Class<?> i : interfaces) {
-            getMethodsRecursive(i.getInterfaces(), methods);
-            Collections.addAll(methods, i.getDeclaredMethods());
+    private static final class MethodTable {
+        /**
+         * Interface tables, held softly. A table refers to its interface
+         * through its methods, so while the table is softly reachable so are
+         * the interface and its class loader, and the weak key is not
+         * cleared; a strong value would pin them forever. A weak value would
+         * be cleared at the next collection and the table rebuilt, which
+         * would defeat {@link #precomputeMethodTables}.
+         */
+        private static final Map<Class<?>, SoftReference<MethodTable>> interfaceTables =
+                new WeakHashMap<>();
+
+        private static final MethodTable OBJECT_METHODS;
+
+        static {
+            try {
+                OBJECT_METHODS = sorted(new Method[]{
+                        Object.class.getMethod("equals", Object.class),
+                        Object.class.getMethod("hashCode", EmptyArray.CLASS),
+                        Object.class.getMethod("toString", EmptyArray.CLASS)});
+            } catch (NoSuchMethodException e) {
+                throw new AssertionError();
+            }
+        }
+
+        final Method[] methods;
+        final Class<?>[][] exceptions;
+
+        private MethodTable(Method[] methods, Class<?>[][] exceptions) {
+            this.methods = methods;
+            this.exceptions = exceptions;
+        }
+
+        /**
+         * Returns a new table for a proxy class implementing
+         * {@code interfaces}. Throws if two of its methods have the same
+         * name and parameters but incompatible return types.
+         */
+        static MethodTable forProxy(Class<?>[] interfaces) {
+            MethodTable[] tables = new MethodTable[interfaces.length + 1];
+            tables[0] = OBJECT_METHODS;
+            for (int i = 0; i < interfaces.length; i++) {
+                tables[i + 1] = forInterface(interfaces[i]);
+            }
+            MethodTable table = merge(tables);
+            validateReturnTypes(Arrays.asList(table.methods));
+            return table;
+        }
+
+        static MethodTable forInterface(Class<?> intf) {
+            synchronized (interfaceTables) {
+                SoftReference<MethodTable> ref = interfaceTables.get(intf);
+                MethodTable table = ref != null ? ref.get() : null;
+                if (table != null) {
+                    return table;
+                }
+            }
+            // computed outside the lock; racing threads compute equal tables
+            Class<?>[] superInterfaces = intf.getInterfaces();
+            MethodTable[] tables = new MethodTable[superInterfaces.length + 1];
+            for (int i = 0; i < superInterfaces.length; i++) {
+                tables[i] = forInterface(superInterfaces[i]);
+            }
+            tables[superInterfaces.length] = sorted(intf.getDeclaredMethods());
+            MethodTable table = merge(tables);
+            synchronized (interfaceTables) {
+                interfaceTables.put(intf, new SoftReference<>(table));
+            }
+            return table;
+        }
+
+        private static MethodTable sorted(Method[] declared) {
+            Method[] methods = declared.clone();
+            Arrays.sort(methods, ORDER_BY_SIGNATURE_AND_SUBTYPE);
+            Class<?>[][] exceptions = new Class<?>[methods.length][];
+            for (int i = 0; i < methods.length; i++) {
+                exceptions[i] = methods[i].getExceptionTypes();
+            }
+            return merge(new MethodTable(methods, exceptions));
+        }
+
+        /**
+         * Merges sorted tables into one, as a stable sort of their
+         * concatenation would order them, and merges equal methods.
+         */
+        private static MethodTable merge(MethodTable... tables) {
+            int total = 0;
+            for (MethodTable table : tables) {
+                total += table.methods.length;
+            }
+            Method[] methods = new Method[total];
+            Class<?>[][] exceptions = new Class<?>[total][];
+            int[] positions = new int[tables.length];
+            int size = 0;
+            for (int n = 0; n < total; n++) {
+                int next = -1;
+                for (int t = 0; t < tables.length; t++) {
+                    if (positions[t] < tables[t].methods.length && (next == -1
+                            || ORDER_BY_SIGNATURE_AND_SUBTYPE.compare(
+                                    tables[t].methods[positions[t]],
+                                    tables[next].methods[positions[next]]) < 0)) {
+                        next = t;
+                    }
+                }
+                Method method = tables[next].methods[positions[next]];
+                Class<?>[] exceptionTypes = tables[next].exceptions[positions[next]];
+                positions[next]++;
+
+                if (size > 0 && Method.ORDER_BY_SIGNATURE.compare(method, methods[size - 1]) == 0) {
+                    exceptions[size - 1] =
+                            intersectExceptions(exceptions[size - 1], exceptionTypes);
+                } else {
+                    methods[size] = method;
+                    exceptions[size] = exceptionTypes;
+                    size++;
+                }
+            }
+            return new MethodTable(Arrays.copyOf(methods, size), Arrays.copyOf(exceptions, size));
         }
     }
 
@@ -802,9 +941,11 @@ public class Proxy implements java.io.Serializable {
             throws IllegalArgumentException {
         Objects.requireNonNull(h);
 
-        final Class<?>[] intfs = interfaces.clone();
+        // The cache reads a single interface once and copies two or more before
+        // using them, so there is no need to clone them here.
         // Android-removed: SecurityManager calls
         /*
+        final Class<?>[] intfs = interfaces.clone();
         final SecurityManager sm = System.getSecurityManager();
         if (sm != null) {
             checkProxyAccess(Reflection.getCallerClass(), loader, intfs);
@@ -812,18 +953,13 @@ public class Proxy implements java.io.Serializable {
         */
 
         // 1、通过 loader 和 interfaces 创建动态代理类
-        Class<?> cl = getProxyClass0(loader, intfs);
+        // 2、动态代理类的构造函数（参数类型是 InvocationHandler.class 类型）和代理类一起缓存，无需每次反射查找
+        final Constructor<?> cons = getProxyConstructor0(loader, interfaces);
 
         /*
          * Invoke its constructor with the designated invocation handler.
          */
         try {
-            // 2、通过反射机制获取动态代理类的构造函数（参数类型是 InvocationHandler.class 类型）
-            final Constructor<?> cons = cl.getConstructor(constructorParams);
-            final InvocationHandler ih = h;
-            if (!Modifier.isPublic(cl.getModifiers())) {
-                cons.setAccessible(true);
-            }
             // 3、通过动态代理类的构造函数和调用处理器对象创建代理类实例
             return cons.newInstance(new Object[]{h});
         } catch (IllegalAccessException | InstantiationException e) {
@@ -835,8 +971,6 @@ public class Proxy implements java.io.Serializable {
             } else {
                 throw new InternalError(t.toString(), t);
             }
-        } catch (NoSuchMethodException e) {
-            throw new InternalError(e.toString(), e);
         }
     }
 
@@ -0,0 +1,304 @@
+package com.mylike.originandroid.代理;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Cache mapping a pair of {@code (ClassLoader, Class<?>[])} to a proxy class,
+ * replacing the general purpose {@code WeakCache} for {@link Proxy}.
+ *
+ * <p>Each class loader gets its own table, found by identity in a small
+ * copy-on-write array. Within a table, proxy classes implementing a single
+ * interface (by far the most frequent case) live in an open-addressing table
+ * keyed on the identity of the interface, so a hit takes no lock and
+ * allocates nothing. Other interface combinations are keyed by the
+ * sub-keys of {@code subKeyFactory}, as before.
+ *
+ * <p>Next to each proxy class the cache keeps its accessible
+ * {@code (InvocationHandler)} constructor, so creating another instance of a
+ * known proxy class needs neither {@link Class#getConstructor} nor
+ * {@link Constructor#setAccessible}.
+ *
+ * <p>Class loaders, interfaces and proxy classes are all weakly referenced.
+ * Instead of polling a reference queue on every access, cleared entries are
+ * dropped when a table is written, which only happens on a miss. A
+ * constructor refers to its class, and through it to the class loader, so it
+ * is held softly: it survives ordinary collections but never keeps a class
+ * loader alive for good, and is looked up again if it was cleared.
+ */
+final class ProxyClassCache {
+
+    private final BiFunction<ClassLoader, Class<?>[], Object> subKeyFactory;
+    private final BiFunction<ClassLoader, Class<?>[], Class<?>> valueFactory;
+    private final Function<Class<?>, Constructor<?>> constructorFactory;
+
+    // the bootstrap loader is never collected and has no object to refer to
+    private final LoaderTable bootTable = new LoaderTable(null);
+    private volatile LoaderTable[] tables = new LoaderTable[0];
+
+    /**
+     * Construct an instance of {@code ProxyClassCache}
+     *
+     * @param subKeyFactory a function mapping a pair of
+     *                      {@code (classLoader, interfaces)} -&gt; sub-key,
+     *                      used for two or more interfaces
+     * @param valueFactory  a function mapping a pair of
+     *                      {@code (classLoader, interfaces)} -&gt; proxy class
+     * @param constructorFactory a function mapping a proxy class -&gt; its
+     *                      accessible constructor
+     * @throws NullPointerException if any of the factories is null.
+     */
+    ProxyClassCache(BiFunction<ClassLoader, Class<?>[], Object> subKeyFactory,
+                    BiFunction<ClassLoader, Class<?>[], Class<?>> valueFactory,
+                    Function<Class<?>, Constructor<?>> constructorFactory) {
+        this.subKeyFactory = Objects.requireNonNull(subKeyFactory);
+        this.valueFactory = Objects.requireNonNull(valueFactory);
+        this.constructorFactory = Objects.requireNonNull(constructorFactory);
+    }
+
+    /**
+     * Look-up the proxy class through the cache. This always evaluates the
+     * {@code valueFactory} function if there is no proxy class in the cache
+     * for given pair of {@code (loader, interfaces)} or it has been cleared.
+     *
+     * @param loader     the class loader (may be null)
+     * @param interfaces the interfaces (must not be null)
+     * @return the cached proxy class (never null)
+     * @throws NullPointerException if {@code interfaces} or one of its
+     *                              elements is null
+     */
+    Class<?> get(ClassLoader loader, Class<?>[] interfaces) {
+        for (;;) {
+            Class<?> proxyClass = entry(loader, interfaces).get();
+            if (proxyClass != null) {
+                return proxyClass;
+            }
+        }
+    }
+
+    /**
+     * Like {@link #get}, but returns the accessible constructor of the proxy
+     * class taking an {@code InvocationHandler}.
+     */
+    Constructor<?> getConstructor(ClassLoader loader, Class<?>[] interfaces) {
+        for (;;) {
+            Constructor<?> constructor = entry(loader, interfaces).constructor();
+            if (constructor != null) {
+                return constructor;
+            }
+        }
+    }
+
+    /**
+     * Returns the entry for {@code (loader, interfaces)}, creating its proxy
+     * class if needed. The proxy class of the returned entry was reachable
+     * when it was looked up; callers that find it cleared simply ask again.
+     * The caller's {@code interfaces} array may change concurrently, so each
+     * element is read exactly once: a single interface is read into a local,
+     * and two or more are copied before the sub-key is computed, so that the
+     * sub-key and the generated class are made from the same interfaces.
+     */
+    private ProxyEntry entry(ClassLoader loader, Class<?>[] interfaces) {
+        Objects.requireNonNull(interfaces);
+        LoaderTable table = table(loader, true);
+        if (interfaces.length == 1) {
+            Class<?> intf = Objects.requireNonNull(interfaces[0]);
+            ProxyEntry entry = table.getSingle(intf);
+            return entry != null ? entry : table.createSingle(intf);
+        }
+        Class<?>[] intfs = interfaces.clone();
+        Object subKey = subKeyFactory.apply(loader, intfs);
+        ProxyEntry entry = table.multi.get(subKey);
+        return entry != null && entry.get() != null
+                ? entry : table.createMulti(subKey, intfs);
+    }
+
+    /**
+     * Checks whether the specified non-null class is a proxy class currently
+     * held by this cache.
+     *
+     * @return true if given {@code proxyClass} is in the cache.
+     */
+    boolean containsValue(Class<?> proxyClass) {
+        LoaderTable table = table(proxyClass.getClassLoader(), false);
+        if (table == null) {
+            return false;
+        }
+        // a proxy class implements exactly the interfaces it was created for, in order
+        Class<?>[] interfaces = proxyClass.getInterfaces();
+        ProxyEntry entry = interfaces.length == 1
+                ? table.getSingle(interfaces[0])
+                : table.multi.get(subKeyFactory.apply(proxyClass.getClassLoader(), interfaces));
+        return entry != null && entry.get() == proxyClass;
+    }
+
+    private LoaderTable table(ClassLoader loader, boolean create) {
+        if (loader == null) {
+            return bootTable;
+        }
+        for (LoaderTable table : tables) {
+            if (table.get() == loader) {
+                return table;
+            }
+        }
+        return create ? addTable(loader) : null;
+    }
+
+    private synchronized LoaderTable addTable(ClassLoader loader) {
+        LoaderTable[] old = tables;
+        LoaderTable[] copy = new LoaderTable[old.length + 1];
+        int size = 0;
+        for (LoaderTable table : old) {
+            ClassLoader l = table.get();
+            if (l == loader) {
+                return table; // added by another thread in the meantime
+            }
+            if (l != null) {
+                copy[size++] = table; // drop tables of collected loaders
+            }
+        }
+        LoaderTable table = new LoaderTable(loader);
+        copy[size++] = table;
+        tables = size == copy.length ? copy : Arrays.copyOf(copy, size);
+        return table;
+    }
+
+    /**
+     * The proxy classes defined by one class loader. Writes synchronize on
+     * the table, so that each proxy class is generated only once.
+     */
+    private final class LoaderTable extends WeakReference<ClassLoader> {
+        private volatile SingleEntry[] singles = new SingleEntry[8];
+        final ConcurrentHashMap<Object, ProxyEntry> multi =
+                new ConcurrentHashMap<>();
+
+        LoaderTable(ClassLoader loader) {
+            super(loader);
+        }
+
+        /** Returns the live entry for {@code intf}, or null. */
+        ProxyEntry getSingle(Class<?> intf) {
+            SingleEntry[] slots = singles;
+            int mask = slots.length - 1;
+            int i = System.identityHashCode(intf) & mask;
+            SingleEntry entry;
+            while ((entry = slots[i]) != null) {
+                if (entry.get() == intf) {
+                    ProxyEntry proxy = entry.proxy;
+                    return proxy.get() != null ? proxy : null;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        synchronized ProxyEntry createSingle(Class<?> intf) {
+            ProxyEntry proxy = getSingle(intf);
+            if (proxy != null) {
+                return proxy;
+            }
+            proxy = new ProxyEntry(valueFactory.apply(get(), new Class<?>[]{intf}));
+
+            // 写时复制：重建整张表，顺便丢掉已被回收的条目
+            SingleEntry[] old = singles;
+            int live = 1;
+            for (SingleEntry entry : old) {
+                if (entry != null && !entry.isCleared()) {
+                    live++;
+                }
+            }
+            int capacity = 8;
+            while (capacity < live * 2) {
+                capacity <<= 1;
+            }
+            SingleEntry[] slots = new SingleEntry[capacity];
+            for (SingleEntry entry : old) {
+                if (entry != null && !entry.isCleared()) {
+                    insert(slots, entry);
+                }
+            }
+            insert(slots, new SingleEntry(intf, proxy));
+            singles = slots;
+            return proxy;
+        }
+
+        synchronized ProxyEntry createMulti(Object subKey, Class<?>[] interfaces) {
+            ProxyEntry proxy = multi.get(subKey);
+            if (proxy != null && proxy.get() != null) {
+                return proxy;
+            }
+            proxy = new ProxyEntry(valueFactory.apply(get(), interfaces));
+            // a proxy class refers to all of its interfaces, so an entry whose
+            // sub-key lost an interface has also lost its proxy class
+            for (Iterator<ProxyEntry> it = multi.values().iterator(); it.hasNext(); ) {
+                if (it.next().get() == null) {
+                    it.remove();
+                }
+            }
+            multi.put(subKey, proxy);
+            return proxy;
+        }
+
+        private void insert(SingleEntry[] slots, SingleEntry entry) {
+            int mask = slots.length - 1;
+            int i = entry.hash & mask;
+            while (slots[i] != null) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = entry;
+        }
+    }
+
+    /**
+     * A proxy class and its constructor.
+     */
+    private final class ProxyEntry extends WeakReference<Class<?>> {
+        private volatile SoftReference<Constructor<?>> constructor;
+
+        ProxyEntry(Class<?> proxyClass) {
+            super(proxyClass);
+            this.constructor = new SoftReference<Constructor<?>>(
+                    constructorFactory.apply(proxyClass));
+        }
+
+        /** Returns the constructor, or null if the proxy class was cleared. */
+        Constructor<?> constructor() {
+            Constructor<?> c = constructor.get();
+            if (c == null) {
+                Class<?> proxyClass = get();
+                if (proxyClass == null) {
+                    return null;
+                }
+                // racing threads may each look it up; any of the results will do
+                c = constructorFactory.apply(proxyClass);
+                constructor = new SoftReference<Constructor<?>>(c);
+            }
+            return c;
+        }
+    }
+
+    /**
+     * A single-interface entry: the interface and its proxy class.
+     */
+    private static final class SingleEntry extends WeakReference<Class<?>> {
+        final int hash;
+        final ProxyEntry proxy;
+
+        SingleEntry(Class<?> intf, ProxyEntry proxy) {
+            super(intf);
+            this.hash = System.identityHashCode(intf);
+            this.proxy = proxy;
+        }
+
+        boolean isCleared() {
+            return get() == null || proxy.get() == null;
+        }
+    }
+}
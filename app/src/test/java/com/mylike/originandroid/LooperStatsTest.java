@@ -0,0 +1,61 @@
+package com.mylike.originandroid;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LooperStatsTest {
+    private static final int WARMUP = 2000000;
+    private static final int RECORDS = 5000000;
+    /** Budget per recordDispatch(), which runs for every message a looper dispatches. */
+    private static final long MAX_NANOS_PER_RECORD = 50;
+
+    @Test
+    public void messageWithoutDueTimeIsLeftOutOfDelayHistogram() {
+        LooperStats stats = new LooperStats();
+        stats.recordDispatch(LooperStatsTest.class, 1, 1000, 5);
+        stats.recordDispatch(LooperStatsTest.class, 1, 1000, LooperStats.NO_DELAY);
+
+        List<LooperStats.EntrySnapshot> snapshot = stats.snapshot();
+        assertEquals(1, snapshot.size());
+        assertEquals(2, snapshot.get(0).dispatchNanos.count);
+        assertEquals(1, snapshot.get(0).delayMillis.count);
+        assertEquals(5, snapshot.get(0).delayMillis.max);
+    }
+
+    @Test
+    public void resetForgetsEntries() {
+        LooperStats stats = new LooperStats();
+        stats.recordDispatch(LooperStatsTest.class, 1, 1000, 5);
+        stats.reset();
+
+        assertTrue(stats.snapshot().isEmpty());
+        stats.recordDispatch(LooperStatsTest.class, 1, 1000, 5);
+        assertEquals(1, stats.snapshot().get(0).dispatchNanos.count);
+    }
+
+    @Test
+    public void recordDispatchIsCheap() {
+        LooperStats stats = new LooperStats();
+        // A few handler classes and whats, as on a busy looper.
+        Class<?>[] handlers = { String.class, Integer.class, Long.class, Object.class };
+        record(stats, handlers, WARMUP);
+
+        long start = System.nanoTime();
+        record(stats, handlers, RECORDS);
+        long nanosPerRecord = (System.nanoTime() - start) / RECORDS;
+
+        System.out.println("recordDispatch: " + nanosPerRecord + " ns");
+        assertTrue(nanosPerRecord + " ns per record", nanosPerRecord < MAX_NANOS_PER_RECORD);
+    }
+
+    private static void record(LooperStats stats, Class<?>[] handlers, int count) {
+        for (int i = 0; i < count; i++) {
+            stats.recordDispatch(handlers[i & 3], i & 7, i & 0xffff,
+                    (i & 15) == 0 ? LooperStats.NO_DELAY : i & 0xff);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.mylike.originandroid;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.IPermissionController;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks how many lookups reach the service manager, using a local stand-in that counts them.
+ */
+public class ServiceManagerTest {
+    private final FakeServiceManager mServiceManager = new FakeServiceManager();
+    private final IBinder mAlarm = new Binder();
+
+    @Before
+    public void setUp() {
+        ServiceManager.setServiceManagerForTest(mServiceManager);
+        mServiceManager.mServices.put("alarm", mAlarm);
+    }
+
+    @After
+    public void tearDown() {
+        ServiceManager.setServiceManagerForTest(null);
+    }
+
+    @Test
+    public void presentServiceIsLookedUpEveryTimeUntilCached() {
+        assertSame(mAlarm, ServiceManager.getService("alarm"));
+        assertSame(mAlarm, ServiceManager.getService("alarm"));
+        assertEquals(2, mServiceManager.mLookups);
+    }
+
+    @Test
+    public void cachedServiceSkipsIpc() {
+        Map<String, IBinder> cache = new HashMap<String, IBinder>();
+        cache.put("alarm", mAlarm);
+        ServiceManager.initServiceCache(cache);
+
+        assertSame(mAlarm, ServiceManager.getService("alarm"));
+        assertSame(mAlarm, ServiceManager.checkService("alarm"));
+        assertEquals(0, mServiceManager.mLookups);
+    }
+
+    @Test
+    public void missingServiceIsLookedUpOnce() {
+        assertNull(ServiceManager.getService("missing"));
+        assertNull(ServiceManager.getService("missing"));
+        assertNull(ServiceManager.checkService("missing"));
+        assertEquals(1, mServiceManager.mLookups);
+    }
+
+    @Test
+    public void missingServiceIsLookedUpAgainAfterTtl() throws InterruptedException {
+        ServiceManager.setNegativeCacheTtlForTest(10);
+        assertNull(ServiceManager.getService("missing"));
+        Thread.sleep(20);
+        assertNull(ServiceManager.getService("missing"));
+        assertEquals(2, mServiceManager.mLookups);
+    }
+
+    @Test
+    public void getServicesLooksUpEachUnknownNameOnce() {
+        IBinder[] services = ServiceManager.getServices("alarm", "missing", "alarm", "missing");
+
+        assertArrayEquals(new IBinder[] { mAlarm, null, mAlarm, null }, services);
+        assertEquals(2, mServiceManager.mLookups);
+    }
+
+    @Test
+    public void addServiceClearsNegativeEntry() {
+        final IBinder power = new Binder();
+        assertNull(ServiceManager.getService("power"));
+
+        ServiceManager.addService("power", power);
+
+        assertSame(power, ServiceManager.getService("power"));
+        assertEquals(2, mServiceManager.mLookups);
+    }
+
+    @Test
+    public void addServiceDuringLookupIsNotMaskedByItsNullAnswer() {
+        final IBinder power = new Binder();
+        // The lookup is answered before the service is added, and returns after it was.
+        mServiceManager.mDuringLookup = new Runnable() {
+            @Override
+            public void run() {
+                mServiceManager.mDuringLookup = null;
+                ServiceManager.addService("power", power);
+            }
+        };
+        assertNull(ServiceManager.getService("power"));
+
+        assertSame(power, ServiceManager.getService("power"));
+        assertEquals(2, mServiceManager.mLookups);
+    }
+
+    private static final class FakeServiceManager implements IServiceManager {
+        final Map<String, IBinder> mServices = new HashMap<String, IBinder>();
+        int mLookups;
+        Runnable mDuringLookup;
+
+        @Override
+        public IBinder getService(String name) {
+            return lookUp(name);
+        }
+
+        @Override
+        public IBinder checkService(String name) {
+            return lookUp(name);
+        }
+
+        private IBinder lookUp(String name) {
+            mLookups++;
+            final IBinder service = mServices.get(name);
+            if (mDuringLookup != null) {
+                mDuringLookup.run();
+            }
+            return service;
+        }
+
+        @Override
+        public void addService(String name, IBinder service, boolean allowIsolated) {
+            mServices.put(name, service);
+        }
+
+        @Override
+        public String[] listServices() {
+            return mServices.keySet().toArray(new String[mServices.size()]);
+        }
+
+        @Override
+        public void setPermissionController(IPermissionController controller) {
+        }
+
+        @Override
+        public IBinder asBinder() {
+            return null;
+        }
+    }
+}
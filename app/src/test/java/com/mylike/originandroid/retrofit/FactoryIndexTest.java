@@ -0,0 +1,160 @@
+package com.mylike.originandroid.retrofit;
+
+import org.junit.Test;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Resolves the return types of 500 synthetic endpoints against a list of factories, once with
+ * {@link FactoryIndex} and once with the plain ordered scan, and checks that both pick the same
+ * factory while the index asks fewer of them.
+ */
+public final class FactoryIndexTest {
+    private static final int ENDPOINTS = 500;
+    private static final int ROUNDS = 200;
+
+    @Retention(RUNTIME)
+    @interface Endpoint {
+        String value();
+    }
+
+    private static final Class<?>[] RAW_TYPES = {
+            Future.class, CompletableFuture.class, Optional.class, List.class, Set.class,
+            Map.class, Deque.class, Call.class,
+    };
+
+    private final List<FakeFactory> factories = new ArrayList<>();
+    private final Class<?>[] returnTypes = new Class<?>[ENDPOINTS];
+    private final Annotation[][] annotations = new Annotation[ENDPOINTS][];
+
+    public FactoryIndexTest() {
+        // One factory per raw type that says so, then a catch-all that does not, as the default
+        // call adapter factory is last.
+        for (int i = 0; i < RAW_TYPES.length - 1; i++) {
+            factories.add(new IndexedFactory(RAW_TYPES[i]));
+        }
+        factories.add(new FakeFactory(Call.class));
+        for (int i = 0; i < ENDPOINTS; i++) {
+            returnTypes[i] = RAW_TYPES[i % RAW_TYPES.length];
+            annotations[i] = new Annotation[] { endpoint("users/" + i) };
+        }
+    }
+
+    @Test public void indexedLookupMatchesOrderedScan() {
+        FactoryIndex index = new FactoryIndex(factories);
+        for (int i = 0; i < ENDPOINTS; i++) {
+            assertEquals(scan(null, returnTypes[i], annotations[i]),
+                    scan(index, returnTypes[i], annotations[i]));
+        }
+    }
+
+    @Test public void indexedLookupAsksFewerFactories() {
+        FactoryIndex index = new FactoryIndex(factories);
+        int scanned = countCalls(null);
+        int indexed = countCalls(index);
+
+        assertTrue(indexed + " >= " + scanned, indexed < scanned);
+    }
+
+    @Test public void benchmark() {
+        FactoryIndex index = new FactoryIndex(factories);
+        // Warm up both paths before timing them.
+        time(null);
+        time(index);
+        long scanNanos = time(null);
+        long indexedNanos = time(index);
+
+        long lookups = (long) ENDPOINTS * ROUNDS;
+        System.out.println("ordered scan: " + scanNanos / lookups + " ns/lookup, indexed: "
+                + indexedNanos / lookups + " ns/lookup over " + ENDPOINTS + " endpoints");
+    }
+
+    private long time(FactoryIndex index) {
+        int found = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < ENDPOINTS; i++) {
+                if (scan(index, returnTypes[i], annotations[i]) != null) found++;
+            }
+        }
+        long took = System.nanoTime() - start;
+        assertEquals(ENDPOINTS * ROUNDS, found);
+        return took;
+    }
+
+    private int countCalls(FactoryIndex index) {
+        for (FakeFactory factory : factories) factory.calls = 0;
+        for (int i = 0; i < ENDPOINTS; i++) {
+            scan(index, returnTypes[i], annotations[i]);
+        }
+        int calls = 0;
+        for (FakeFactory factory : factories) calls += factory.calls;
+        return calls;
+    }
+
+    /** The loop of {@link Retrofit#nextCallAdapter}, with or without the index. */
+    private Object scan(FactoryIndex index, Class<?> rawType, Annotation[] annotations) {
+        for (int i = 0, count = factories.size(); i < count; i++) {
+            if (index != null && !index.mayHandle(i, rawType)) continue;
+            Object adapter = factories.get(i).get(rawType, annotations);
+            if (adapter != null) {
+                return adapter;
+            }
+        }
+        return null;
+    }
+
+    private static Endpoint endpoint(final String value) {
+        return new Endpoint() {
+            @Override public String value() {
+                return value;
+            }
+
+            @Override public Class<? extends Annotation> annotationType() {
+                return Endpoint.class;
+            }
+        };
+    }
+
+    /** Inspects the annotations like a real factory would before deciding on the raw type. */
+    static class FakeFactory {
+        final Class<?> rawType;
+        int calls;
+
+        FakeFactory(Class<?> rawType) {
+            this.rawType = rawType;
+        }
+
+        Object get(Class<?> returnType, Annotation[] annotations) {
+            calls++;
+            for (Annotation annotation : annotations) {
+                if (annotation.annotationType() == Deprecated.class) return null;
+            }
+            return returnType == rawType ? this : null;
+        }
+    }
+
+    static final class IndexedFactory extends FakeFactory implements HandlesRawTypes {
+        IndexedFactory(Class<?> rawType) {
+            super(rawType);
+        }
+
+        @Override public Set<Class<?>> handledRawTypes() {
+            return Collections.<Class<?>>singleton(rawType);
+        }
+    }
+}
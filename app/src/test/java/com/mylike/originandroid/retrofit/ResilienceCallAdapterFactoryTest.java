@@ -0,0 +1,427 @@
+package com.mylike.originandroid.retrofit;
+
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Drives {@link ResilienceCallAdapterFactory} with scripted calls standing in for a server: each
+ * copy of a call (the original, then every clone) answers with the next scripted outcome, which
+ * can be a response, an I/O error, a conversion error, or no answer until canceled.
+ */
+public final class ResilienceCallAdapterFactoryTest {
+    private static final String HOST = "api.example.com";
+
+    private final ResilienceCallAdapterFactory.LatencyTracker latencies =
+            new ResilienceCallAdapterFactory.LatencyTracker();
+
+    @Test public void executeRetriesIoFailures() throws IOException {
+        Script script = new Script("GET", Outcome.io(), Outcome.io(), Outcome.ok("hello"));
+        ResilienceCallAdapterFactory factory = factory().maxRetries(2).build();
+
+        Response<String> response = call(factory, script).execute();
+
+        assertEquals("hello", response.body());
+        assertEquals(3, script.calls.size());
+    }
+
+    @Test public void executeDoesNotRetryNonIdempotentMethods() {
+        Script script = new Script("POST", Outcome.io(), Outcome.ok("hello"));
+        ResilienceCallAdapterFactory factory = factory().maxRetries(2).build();
+
+        try {
+            call(factory, script).execute();
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(1, script.calls.size());
+    }
+
+    @Test public void executeCancelEndsBackoff() throws Exception {
+        Script script = new Script("GET", Outcome.io(), Outcome.ok("hello"));
+        ResilienceCallAdapterFactory factory = factory()
+                .maxRetries(1)
+                .backoff(10, 10, TimeUnit.SECONDS)
+                .build();
+        final Call<String> call = call(factory, script);
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    call.execute();
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        });
+        thread.start();
+        script.awaitCalls(1);
+
+        call.cancel();
+        thread.join(TimeUnit.SECONDS.toMillis(2));
+
+        assertFalse("execute() still waiting in backoff", thread.isAlive());
+        assertTrue(thrown.get() instanceof IOException);
+        assertEquals(1, script.calls.size());
+    }
+
+    @Test public void executeCancelReachesRetriedAttempt() throws Exception {
+        Script script = new Script("GET", Outcome.io(), Outcome.hang());
+        ResilienceCallAdapterFactory factory = factory().maxRetries(1).build();
+        final Call<String> call = call(factory, script);
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    call.execute();
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        });
+        thread.start();
+        script.awaitCalls(2);
+
+        call.cancel();
+        thread.join(TimeUnit.SECONDS.toMillis(2));
+
+        assertFalse("retried attempt was not canceled", thread.isAlive());
+        assertTrue(script.calls.get(1).isCanceled());
+        assertTrue(thrown.get() instanceof IOException);
+    }
+
+    @Test public void enqueueRetriesServerErrors() throws Exception {
+        Script script = new Script("GET", Outcome.http(503), Outcome.ok("hello"));
+        ResilienceCallAdapterFactory factory = factory().maxRetries(2).build();
+
+        RecordingCallback callback = new RecordingCallback();
+        call(factory, script).enqueue(callback);
+
+        assertEquals("hello", callback.awaitResponse().body());
+        assertEquals(2, script.calls.size());
+    }
+
+    @Test public void hedgeWinsAndLoserIsCanceled() throws Exception {
+        Script script = new Script("GET", Outcome.hang(), Outcome.ok("hedged"));
+        ResilienceCallAdapterFactory factory = factory()
+                .maxRetries(0)
+                .hedging(true)
+                .minHedgeDelay(10, TimeUnit.MILLISECONDS)
+                .build();
+        for (int i = 0; i < factory.minHedgeSamples; i++) {
+            latencies.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        RecordingCallback callback = new RecordingCallback();
+        call(factory, script).enqueue(callback);
+
+        assertEquals("hedged", callback.awaitResponse().body());
+        assertEquals(2, script.calls.size());
+        assertTrue(script.calls.get(0).isCanceled());
+    }
+
+    @Test public void hedgedAttemptCountsOneFailure() throws Exception {
+        Script script = new Script("GET", Outcome.hang(10), Outcome.io());
+        ResilienceCallAdapterFactory factory = factory()
+                .maxRetries(0)
+                .hedging(true)
+                .minHedgeDelay(1, TimeUnit.MILLISECONDS)
+                .circuitBreaker(2, 1, TimeUnit.MINUTES)
+                .build();
+        for (int i = 0; i < factory.minHedgeSamples; i++) {
+            latencies.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        RecordingCallback callback = new RecordingCallback();
+        call(factory, script).enqueue(callback);
+        callback.awaitFailure();
+
+        // Two copies failed, but they were one attempt; the threshold of 2 is not reached.
+        assertEquals(2, script.calls.size());
+        assertTrue(factory.breaker(HOST).allowRequest(new Object()));
+    }
+
+    @Test public void conversionFailureDoesNotCountAgainstHost() throws Exception {
+        Script script = new Script("GET", Outcome.conversion());
+        ResilienceCallAdapterFactory factory = factory()
+                .circuitBreaker(1, 1, TimeUnit.MINUTES)
+                .build();
+
+        RecordingCallback callback = new RecordingCallback();
+        call(factory, script).enqueue(callback);
+
+        assertTrue(callback.awaitFailure() instanceof IllegalStateException);
+        assertTrue(factory.breaker(HOST).allowRequest(new Object()));
+    }
+
+    @Test public void breakerOpensHalfOpensAndCloses() throws InterruptedException {
+        ResilienceCallAdapterFactory.CircuitBreaker breaker =
+                new ResilienceCallAdapterFactory.CircuitBreaker(2, 50);
+        Object first = new Object();
+        Object second = new Object();
+
+        assertTrue(breaker.allowRequest(first));
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest(first));
+        breaker.onFailure();
+        assertFalse("open", breaker.allowRequest(first));
+
+        Thread.sleep(60);
+        assertTrue("half-open trial", breaker.allowRequest(first));
+        assertFalse("one trial at a time", breaker.allowRequest(second));
+        breaker.onFailure();
+        assertFalse("failed trial re-opens", breaker.allowRequest(second));
+
+        Thread.sleep(60);
+        assertTrue(breaker.allowRequest(first));
+        breaker.onSuccess();
+        assertTrue("closed", breaker.allowRequest(second));
+        assertTrue(breaker.allowRequest(first));
+    }
+
+    @Test public void abandonedTrialIsReleasedOnlyByItsOwner() throws InterruptedException {
+        ResilienceCallAdapterFactory.CircuitBreaker breaker =
+                new ResilienceCallAdapterFactory.CircuitBreaker(1, 10);
+        Object trial = new Object();
+        Object other = new Object();
+        breaker.onFailure();
+        Thread.sleep(20);
+
+        assertTrue(breaker.allowRequest(trial));
+        breaker.onAbandoned(other);
+        assertFalse(breaker.allowRequest(other));
+        breaker.onAbandoned(trial);
+        assertTrue(breaker.allowRequest(other));
+    }
+
+    private static ResilienceCallAdapterFactory.Builder factory() {
+        return new ResilienceCallAdapterFactory.Builder().backoff(0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private Call<String> call(ResilienceCallAdapterFactory factory, Script script) {
+        return new ResilienceCallAdapterFactory.ResilientCall<>(factory, script.newCall(),
+                latencies);
+    }
+
+    /** What one copy of a call answers. */
+    static final class Outcome {
+        final int code;
+        final @Nullable String body;
+        final @Nullable Exception failure;
+        final long hangMillis; // -1: answers at once, 0: until canceled
+
+        private Outcome(int code, String body, Exception failure, long hangMillis) {
+            this.code = code;
+            this.body = body;
+            this.failure = failure;
+            this.hangMillis = hangMillis;
+        }
+
+        static Outcome ok(String body) {
+            return new Outcome(200, body, null, -1);
+        }
+
+        static Outcome http(int code) {
+            return new Outcome(code, null, null, -1);
+        }
+
+        static Outcome io() {
+            return new Outcome(0, null, new IOException("Connection reset"), -1);
+        }
+
+        static Outcome conversion() {
+            return new Outcome(0, null, new IllegalStateException("Malformed JSON"), -1);
+        }
+
+        static Outcome hang() {
+            return new Outcome(0, null, null, 0);
+        }
+
+        /** Answers with an I/O error after {@code millis}, unless canceled first. */
+        static Outcome hang(long millis) {
+            return new Outcome(0, null, new IOException("Timeout"), millis);
+        }
+
+        Response<String> response() {
+            return code >= 200 && code < 300
+                    ? Response.success(body)
+                    : Response.<String>error(code, ResponseBody.create(null, ""));
+        }
+    }
+
+    /** The outcomes of a call and its clones, in the order the copies are made. */
+    static final class Script {
+        final String method;
+        final List<Outcome> outcomes;
+        final List<FakeCall> calls = new ArrayList<>();
+
+        Script(String method, Outcome... outcomes) {
+            this.method = method;
+            this.outcomes = Arrays.asList(outcomes);
+        }
+
+        synchronized FakeCall newCall() {
+            FakeCall call = new FakeCall(this, outcomes.get(Math.min(calls.size(),
+                    outcomes.size() - 1)));
+            calls.add(call);
+            notifyAll();
+            return call;
+        }
+
+        synchronized void awaitCalls(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (calls.size() < count || !calls.get(count - 1).started) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) throw new AssertionError("Only " + calls.size() + " calls");
+                wait(remaining);
+            }
+        }
+    }
+
+    static final class FakeCall implements Call<String> {
+        private final Script script;
+        private final Outcome outcome;
+        private final CountDownLatch canceledLatch = new CountDownLatch(1);
+        volatile boolean started;
+        private volatile boolean canceled;
+        private volatile boolean executed;
+        private volatile Callback<String> callback;
+
+        FakeCall(Script script, Outcome outcome) {
+            this.script = script;
+            this.outcome = outcome;
+        }
+
+        @Override public Response<String> execute() throws IOException {
+            executed = true;
+            markStarted();
+            if (outcome.hangMillis >= 0) {
+                try {
+                    boolean wasCanceled = outcome.hangMillis == 0
+                            ? await(Long.MAX_VALUE)
+                            : await(outcome.hangMillis);
+                    if (wasCanceled) throw new IOException("Canceled");
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (outcome.failure instanceof IOException) throw (IOException) outcome.failure;
+            if (outcome.failure != null) throw (RuntimeException) outcome.failure;
+            return outcome.response();
+        }
+
+        @Override public void enqueue(final Callback<String> callback) {
+            executed = true;
+            this.callback = callback;
+            markStarted();
+            if (outcome.hangMillis == 0) {
+                return; // Answered by cancel().
+            }
+            if (outcome.hangMillis > 0) {
+                new Thread(new Runnable() {
+                    @Override public void run() {
+                        try {
+                            if (!await(outcome.hangMillis)) deliver(callback);
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                }).start();
+                return;
+            }
+            deliver(callback);
+        }
+
+        private void deliver(Callback<String> callback) {
+            if (outcome.failure != null) {
+                callback.onFailure(this, outcome.failure);
+            } else {
+                callback.onResponse(this, outcome.response());
+            }
+        }
+
+        private boolean await(long millis) throws InterruptedException {
+            return canceledLatch.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        private void markStarted() {
+            synchronized (script) {
+                started = true;
+                script.notifyAll();
+            }
+        }
+
+        @Override public boolean isExecuted() {
+            return executed;
+        }
+
+        @Override public void cancel() {
+            if (canceled) return;
+            canceled = true;
+            canceledLatch.countDown();
+            Callback<String> callback = this.callback;
+            if (callback != null && outcome.hangMillis >= 0) {
+                callback.onFailure(this, new IOException("Canceled"));
+            }
+        }
+
+        @Override public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override public Call<String> clone() {
+            return script.newCall();
+        }
+
+        @Override public okhttp3.Request request() {
+            return new okhttp3.Request.Builder()
+                    .url("https://" + HOST + "/users")
+                    .method(script.method, "POST".equals(script.method)
+                            ? okhttp3.RequestBody.create(null, "") : null)
+                    .build();
+        }
+    }
+
+    static final class RecordingCallback implements Callback<String> {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile Response<String> response;
+        private volatile Throwable failure;
+
+        @Override public void onResponse(Call<String> call, Response<String> response) {
+            this.response = response;
+            latch.countDown();
+        }
+
+        @Override public void onFailure(Call<String> call, Throwable t) {
+            this.failure = t;
+            latch.countDown();
+        }
+
+        Response<String> awaitResponse() throws InterruptedException {
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+            assertNull(failure);
+            return response;
+        }
+
+        Throwable awaitFailure() throws InterruptedException {
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+            assertNull(response);
+            return failure;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.mylike.originandroid.retrofit.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code <Service>_RetrofitBinding} class for every interface with {@code @GET} or
+ * {@code @POST} methods. The binding hands {@code Retrofit} a precomputed
+ * {@code GeneratedRequestSpec} per method so that {@code RequestFactory} no longer has to read the
+ * method and parameter annotations reflectively on first use.
+ * <p>
+ * Only methods this processor can fully validate are described: {@code @GET}/{@code @POST} with a
+ * relative URL and parameters annotated with {@code @Path}, {@code @Query}, {@code @Header} or
+ * {@code @Body}, where string-converted parameters are primitives, boxed primitives or
+ * {@link String} and the body is a non-generic type. Overloaded methods and every other shape are
+ * left out and keep using the reflective path at runtime.
+ * <p>
+ * Enable it with {@code annotationProcessor project(':retrofit-compiler')} and
+ * {@code Retrofit.Builder.useGeneratedRequestFactories(true)}.
+ */
+public final class RetrofitBindingProcessor extends AbstractProcessor {
+    private static final String HTTP_PACKAGE = "retrofit2.http.";
+    private static final String GET = HTTP_PACKAGE + "GET";
+    private static final String POST = HTTP_PACKAGE + "POST";
+    private static final String PATH = HTTP_PACKAGE + "Path";
+    private static final String QUERY = HTTP_PACKAGE + "Query";
+    private static final String HEADER = HTTP_PACKAGE + "Header";
+    private static final String BODY = HTTP_PACKAGE + "Body";
+    private static final String SUFFIX = "_RetrofitBinding";
+
+    // Same rules as RequestFactory.Builder.
+    private static final String PARAM = "[a-zA-Z][a-zA-Z0-9_-]*";
+    private static final Pattern PARAM_URL_REGEX = Pattern.compile("\\{(" + PARAM + ")\\}");
+    private static final Pattern PARAM_NAME_REGEX = Pattern.compile(PARAM);
+
+    private static final Set<String> STRING_CONVERTIBLE = new HashSet<>(Arrays.asList(
+            "java.lang.String", "java.lang.Boolean", "java.lang.Byte", "java.lang.Character",
+            "java.lang.Double", "java.lang.Float", "java.lang.Integer", "java.lang.Long",
+            "java.lang.Short"));
+
+    @Override public Set<String> getSupportedAnnotationTypes() {
+        return new LinkedHashSet<>(Arrays.asList(GET, POST));
+    }
+
+    @Override public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> services = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element enclosing = element.getEnclosingElement();
+                if (enclosing.getKind() == ElementKind.INTERFACE) {
+                    services.add((TypeElement) enclosing);
+                }
+            }
+        }
+        for (TypeElement service : services) {
+            Map<String, String> specs = collectSpecs(service);
+            if (!specs.isEmpty()) {
+                writeBinding(service, specs);
+            }
+        }
+        return false;
+    }
+
+    /** Returns the spec initializer for each supported method, keyed by method name. */
+    private Map<String, String> collectSpecs(TypeElement service) {
+        Map<String, Integer> nameCounts = new LinkedHashMap<>();
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (Element element : service.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.METHOD) continue;
+            ExecutableElement method = (ExecutableElement) element;
+            if (method.getModifiers().contains(Modifier.STATIC)
+                    || method.getModifiers().contains(Modifier.DEFAULT)) {
+                continue;
+            }
+            String name = method.getSimpleName().toString();
+            Integer count = nameCounts.get(name);
+            nameCounts.put(name, count == null ? 1 : count + 1);
+            methods.add(method);
+        }
+
+        Map<String, String> specs = new LinkedHashMap<>();
+        for (ExecutableElement method : methods) {
+            String name = method.getSimpleName().toString();
+            if (nameCounts.get(name) != 1) continue; // Overloads are resolved reflectively.
+            String spec = specFor(method);
+            if (spec != null) {
+                specs.put(name, spec);
+            }
+        }
+        return specs;
+    }
+
+    /** Returns a {@code new GeneratedRequestSpec(...)} expression, or null if unsupported. */
+    private String specFor(ExecutableElement method) {
+        String httpMethod = null;
+        String relativeUrl = null;
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            String type = annotationName(mirror);
+            if (!type.startsWith(HTTP_PACKAGE)) continue;
+            if ((type.equals(GET) || type.equals(POST)) && httpMethod == null) {
+                httpMethod = type.substring(HTTP_PACKAGE.length());
+                relativeUrl = (String) value(mirror, "value");
+            } else {
+                return null; // @Headers, @FormUrlEncoded, @Multipart, a second HTTP method, ...
+            }
+        }
+        if (httpMethod == null || relativeUrl == null || relativeUrl.isEmpty()) {
+            return null;
+        }
+        int question = relativeUrl.indexOf('?');
+        if (question != -1 && PARAM_URL_REGEX.matcher(relativeUrl.substring(question + 1)).find()) {
+            return null;
+        }
+        Set<String> pathNames = new HashSet<>();
+        Matcher matcher = PARAM_URL_REGEX.matcher(relativeUrl);
+        while (matcher.find()) {
+            pathNames.add(matcher.group(1));
+        }
+        boolean hasBody = httpMethod.equals("POST");
+
+        StringBuilder params = new StringBuilder();
+        boolean gotBody = false;
+        boolean gotQuery = false;
+        for (VariableElement parameter : method.getParameters()) {
+            String param = null;
+            for (AnnotationMirror mirror : parameter.getAnnotationMirrors()) {
+                String type = annotationName(mirror);
+                if (!type.startsWith(HTTP_PACKAGE)) continue;
+                if (param != null) return null;
+                TypeMirror parameterType = parameter.asType();
+                if (type.equals(BODY)) {
+                    String bodyType = bodyTypeLiteral(parameterType);
+                    if (!hasBody || gotBody || bodyType == null) return null;
+                    gotBody = true;
+                    param = "GeneratedRequestSpec.body(" + bodyType + ")";
+                    continue;
+                }
+                String typeLiteral = stringConvertibleLiteral(parameterType);
+                if (typeLiteral == null) return null;
+                String name = (String) value(mirror, "value");
+                if (type.equals(PATH)) {
+                    if (gotQuery) return null; // Reported by RequestFactory.Builder.
+                    if (!PARAM_NAME_REGEX.matcher(name).matches() || !pathNames.contains(name)) {
+                        return null;
+                    }
+                    param = "GeneratedRequestSpec.path(" + literal(name) + ", "
+                            + value(mirror, "encoded") + ", " + typeLiteral + ")";
+                } else if (type.equals(QUERY)) {
+                    gotQuery = true;
+                    param = "GeneratedRequestSpec.query(" + literal(name) + ", "
+                            + value(mirror, "encoded") + ", " + typeLiteral + ")";
+                } else if (type.equals(HEADER)) {
+                    param = "GeneratedRequestSpec.header(" + literal(name) + ", " + typeLiteral + ")";
+                } else {
+                    return null;
+                }
+            }
+            if (param == null) return null;
+            params.append(",\n                    ").append(param);
+        }
+        return "new GeneratedRequestSpec(" + literal(httpMethod) + ", " + literal(relativeUrl) + ", "
+                + hasBody + params + ")";
+    }
+
+    private String stringConvertibleLiteral(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type)
+                    .getQualifiedName() + ".class";
+        }
+        String name = type.toString();
+        return STRING_CONVERTIBLE.contains(name) ? name + ".class" : null;
+    }
+
+    private String bodyTypeLiteral(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) return null;
+        DeclaredType declared = (DeclaredType) type;
+        if (!declared.getTypeArguments().isEmpty()) return null;
+        return ((TypeElement) declared.asElement()).getQualifiedName() + ".class";
+    }
+
+    private void writeBinding(TypeElement service, Map<String, String> specs) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(service);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(service).toString();
+        String className = (packageName.isEmpty()
+                ? binaryName
+                : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+
+        StringBuilder out = new StringBuilder();
+        out.append("// Generated by ").append(RetrofitBindingProcessor.class.getName())
+                .append(". Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("import com.mylike.originandroid.retrofit.GeneratedRequestSpec;\n")
+                .append("import com.mylike.originandroid.retrofit.GeneratedServiceBinding;\n\n")
+                .append("import java.lang.reflect.Method;\n\n")
+                .append("public final class ").append(className)
+                .append(" implements GeneratedServiceBinding {\n");
+        int index = 0;
+        for (String spec : specs.values()) {
+            out.append("    private static final GeneratedRequestSpec SPEC_").append(index++)
+                    .append(" = ").append(spec).append(";\n");
+        }
+        out.append("\n    @Override public GeneratedRequestSpec requestSpec(Method method) {\n")
+                .append("        switch (method.getName()) {\n");
+        index = 0;
+        for (String name : specs.keySet()) {
+            out.append("            case ").append(literal(name)).append(": return SPEC_")
+                    .append(index++).append(";\n");
+        }
+        out.append("            default: return null;\n")
+                .append("        }\n")
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, service);
+            try (Writer writer = file.openWriter()) {
+                writer.write(out.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write " + qualifiedName + ": " + e.getMessage(), service);
+        }
+    }
+
+    private static String annotationName(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private Object value(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        throw new IllegalArgumentException(annotationName(mirror) + " has no " + name);
+    }
+
+    private static String literal(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': builder.append("\\\""); break;
+                case '\\': builder.append("\\\\"); break;
+                case '\n': builder.append("\\n"); break;
+                case '\r': builder.append("\\r"); break;
+                case '\t': builder.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}